@@ -0,0 +1,83 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.AppApplication;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.impl.BookServiceImpl;
+import com.edu.ulab.app.service.impl.BookServiceImplStorage;
+import com.edu.ulab.app.service.impl.BookServiceImplTemplate;
+import com.edu.ulab.app.service.impl.UserServiceImpl;
+import com.edu.ulab.app.service.impl.UserServiceImplStorage;
+import com.edu.ulab.app.service.impl.UserServiceImplTemplate;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the application without the web layer against its embedded H2,
+ * with the facade wired to the given backend.
+ */
+final class BenchmarkContext {
+    static final String JPA = "jpa";
+    static final String JDBC = "jdbc";
+    static final String IN_MEMORY = "in-memory";
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * @param properties {@code name=value} pairs, they take precedence over application.yaml
+     */
+    static ConfigurableApplicationContext start(String backend, String... properties) {
+        return new SpringApplicationBuilder(AppApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args(backend, properties));
+    }
+
+    /**
+     * Same as {@link #start} with the web layer on a random port.
+     */
+    static ServletWebServerApplicationContext startWeb(String backend, String... properties) {
+        return (ServletWebServerApplicationContext) new SpringApplicationBuilder(AppApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .run(args(backend, properties, "server.port=0"));
+    }
+
+    private static String[] args(String backend, String[] properties, String... defaults) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--app.backend.read=" + backend,
+                "--app.backend.write=" + backend));
+        for (String property : defaults) {
+            args.add("--" + property);
+        }
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return args.toArray(String[]::new);
+    }
+
+    static UserService userService(ApplicationContext context, String backend) {
+        return switch (backend) {
+            case JPA -> context.getBean(UserServiceImpl.class);
+            case JDBC -> context.getBean(UserServiceImplTemplate.class);
+            case IN_MEMORY -> context.getBean(UserServiceImplStorage.class);
+            default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+        };
+    }
+
+    static BookService bookService(ApplicationContext context, String backend) {
+        return switch (backend) {
+            case JPA -> context.getBean(BookServiceImpl.class);
+            case JDBC -> context.getBean(BookServiceImplTemplate.class);
+            case IN_MEMORY -> context.getBean(BookServiceImplStorage.class);
+            default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.request.UserRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static UserDto user() {
+        UserDto userDto = new UserDto();
+        userDto.setFullName("Benchmark User");
+        userDto.setTitle("reader");
+        userDto.setAge(42);
+        return userDto;
+    }
+
+    static List<BookDto> books(Long userId, int count) {
+        List<BookDto> bookDtos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BookDto bookDto = new BookDto();
+            bookDto.setUserId(userId);
+            bookDto.setTitle("Benchmark Book " + i);
+            bookDto.setAuthor("Benchmark Author");
+            bookDto.setPageCount(100 + i);
+            bookDtos.add(bookDto);
+        }
+        return bookDtos;
+    }
+
+    static UserBookRequest userBookRequest(int bookCount) {
+        UserRequest userRequest = new UserRequest();
+        userRequest.setFullName("Benchmark User");
+        userRequest.setTitle("reader");
+        userRequest.setAge(42);
+
+        List<BookRequest> bookRequests = new ArrayList<>(bookCount);
+        for (int i = 0; i < bookCount; i++) {
+            BookRequest bookRequest = new BookRequest();
+            bookRequest.setTitle("Benchmark Book " + i);
+            bookRequest.setAuthor("Benchmark Author");
+            bookRequest.setPageCount(100 + i);
+            bookRequests.add(bookRequest);
+        }
+
+        UserBookRequest request = new UserBookRequest();
+        request.setUserRequest(userRequest);
+        request.setBookRequests(bookRequests);
+        return request;
+    }
+}
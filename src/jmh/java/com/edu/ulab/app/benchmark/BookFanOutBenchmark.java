@@ -0,0 +1,53 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * createUserWithBooks with the books inserted by one batch ({@code parallelism} 1)
+ * and by concurrent partitions, to find the request size where the fan-out pays off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BookFanOutBenchmark {
+    @Param({BenchmarkContext.JPA, BenchmarkContext.JDBC})
+    public String backend;
+
+    @Param({"1", "2", "4"})
+    public int parallelism;
+
+    @Param({"100", "1000", "10000"})
+    public int bookCount;
+
+    private ConfigurableApplicationContext context;
+    private UserDataFacade userDataFacade;
+    private UserBookRequest request;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(backend,
+                "app.book-fan-out.threshold=1",
+                "app.book-fan-out.parallelism=" + parallelism);
+        userDataFacade = context.getBean(UserDataFacade.class);
+        request = BenchmarkData.userBookRequest(bookCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserBookResponse createUserWithBooks() {
+        return userDataFacade.createUserWithBooks(request);
+    }
+}
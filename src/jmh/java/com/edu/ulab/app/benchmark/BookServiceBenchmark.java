@@ -0,0 +1,62 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BookServiceBenchmark {
+    @Param({BenchmarkContext.JPA, BenchmarkContext.JDBC, BenchmarkContext.IN_MEMORY})
+    public String backend;
+
+    @Param({"1", "10", "100", "1000"})
+    public int bookCount;
+
+    private ConfigurableApplicationContext context;
+    private BookService bookService;
+    private Long userId;
+    private Long bookId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(backend);
+        UserService userService = BenchmarkContext.userService(context, backend);
+        bookService = BenchmarkContext.bookService(context, backend);
+        userId = userService.createUser(BenchmarkData.user()).getId();
+        bookId = bookService.createBooks(BenchmarkData.books(userId, bookCount))[0];
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BookDto createBook() {
+        return bookService.createBook(BenchmarkData.books(userId, 1).get(0));
+    }
+
+    @Benchmark
+    public long[] createBooks() {
+        return bookService.createBooks(BenchmarkData.books(userId, bookCount));
+    }
+
+    @Benchmark
+    public BookDto getBookById() {
+        return bookService.getBookById(bookId);
+    }
+
+    @Benchmark
+    public long[] getBookIdsByUserId() {
+        return bookService.getBookIdsByUserId(userId);
+    }
+}
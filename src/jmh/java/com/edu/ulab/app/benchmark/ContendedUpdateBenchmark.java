@@ -0,0 +1,90 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * All threads update the same user, each changing its own book. Every request carries
+ * the full book list, so concurrent requests overlap and updates that still conflict
+ * after the retries are counted instead of failing the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ContendedUpdateBenchmark {
+    private static final int BOOK_COUNT = 32;
+
+    @Param({BenchmarkContext.JPA, BenchmarkContext.JDBC})
+    public String backend;
+
+    @Param({"optimistic", "pessimistic"})
+    public String lockingMode;
+
+    private ConfigurableApplicationContext context;
+    private UserDataFacade userDataFacade;
+    private Long userId;
+    private long[] bookIds;
+    private final AtomicInteger threadIndex = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(backend, "app.locking.mode=" + lockingMode);
+        userDataFacade = context.getBean(UserDataFacade.class);
+        UserBookResponse response = userDataFacade.createUserWithBooks(BenchmarkData.userBookRequest(BOOK_COUNT));
+        userId = response.getUserId();
+        bookIds = response.getBooksIdList();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserBookResponse updateOwnBook(ThreadState state, Conflicts conflicts) {
+        state.ownBook.setPageCount(state.ownBook.getPageCount() + 1);
+        try {
+            return userDataFacade.updateUserWithBooks(userId, state.request);
+        } catch (ConcurrencyFailureException e) {
+            conflicts.conflicts++;
+            return null;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        UserBookRequest request;
+        BookRequest ownBook;
+
+        @Setup
+        public void setUp(ContendedUpdateBenchmark benchmark) {
+            request = BenchmarkData.userBookRequest(BOOK_COUNT);
+            for (int i = 0; i < BOOK_COUNT; i++) {
+                request.getBookRequests().get(i).setId(benchmark.bookIds[i]);
+            }
+            ownBook = request.getBookRequests().get(benchmark.threadIndex.getAndIncrement() % BOOK_COUNT);
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Conflicts {
+        public long conflicts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            conflicts = 0;
+        }
+    }
+}
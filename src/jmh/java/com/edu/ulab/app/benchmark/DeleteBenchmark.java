@@ -0,0 +1,58 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of deleteUserWithBooks; every invocation deletes a freshly created user.
+ * In the soft mode the purge interval is long enough to keep it out of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DeleteBenchmark {
+    @Param({BenchmarkContext.JPA, BenchmarkContext.JDBC})
+    public String backend;
+
+    @Param({"hard", "soft"})
+    public String deleteMode;
+
+    @Param({"10", "1000"})
+    public int bookCount;
+
+    private ConfigurableApplicationContext context;
+    private UserDataFacade userDataFacade;
+    private UserBookRequest request;
+    private Long userId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(backend,
+                "app.delete.mode=" + deleteMode,
+                "app.delete.purge-interval=1h");
+        userDataFacade = context.getBean(UserDataFacade.class);
+        request = BenchmarkData.userBookRequest(bookCount);
+    }
+
+    @Setup(Level.Invocation)
+    public void createUser() {
+        userId = userDataFacade.createUserWithBooks(request).getUserId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void deleteUserWithBooks() {
+        userDataFacade.deleteUserWithBooks(userId);
+    }
+}
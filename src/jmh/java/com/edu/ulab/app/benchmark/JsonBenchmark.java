@@ -0,0 +1,70 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON of a 1000-book create request and its response: a plain reflective mapper
+ * against the application setup of Blackbird with reused reader and writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JsonBenchmark {
+    @Param({"reflective", "blackbird"})
+    public String mapper;
+
+    @Param({"1000"})
+    public int bookCount;
+
+    private ObjectMapper objectMapper;
+    private ObjectReader requestReader;
+    private ObjectWriter responseWriter;
+    private byte[] requestJson;
+    private UserBookResponse response;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        if (mapper.equals("blackbird")) {
+            objectMapper.registerModule(new BlackbirdModule());
+        }
+        requestReader = objectMapper.readerFor(UserBookRequest.class);
+        responseWriter = objectMapper.writerFor(UserBookResponse.class);
+        requestJson = objectMapper.writeValueAsBytes(BenchmarkData.userBookRequest(bookCount));
+
+        long[] bookIds = new long[bookCount];
+        for (int i = 0; i < bookCount; i++) {
+            bookIds[i] = 10_000 + i;
+        }
+        response = UserBookResponse.builder()
+                .userId(10_000L)
+                .booksIdList(bookIds)
+                .build();
+    }
+
+    @Benchmark
+    public UserBookRequest readRequest() throws IOException {
+        return mapper.equals("blackbird")
+                ? requestReader.readValue(requestJson)
+                : objectMapper.readValue(requestJson, UserBookRequest.class);
+    }
+
+    @Benchmark
+    public byte[] writeResponse() throws IOException {
+        return mapper.equals("blackbird")
+                ? responseWriter.writeValueAsBytes(response)
+                : objectMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,243 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.web.constant.WebConstant;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop HTTP load test of the embedded application. Client threads send a mix of
+ * {@code /user/create} and {@code /user/get/{userId}} requests, each as soon as the
+ * previous one is answered, once per connection pool size. Throughput and latency
+ * percentiles of every run are printed and written to {@code target/load-test.csv}.
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec -Dbenchmark.main=com.edu.ulab.app.benchmark.LoadTest \
+ *     -Djmh.args="--backend=jdbc --pools=5,10,20 --clients=64"
+ * </pre>
+ * Options, with their defaults: {@code --backend=jpa}, {@code --profile=production},
+ * {@code --pools=5,10,20}, {@code --clients=32}, {@code --get-ratio=0.8} (share of gets),
+ * {@code --books=5} (books per created user), {@code --users=1000} (users created before
+ * the run for the gets), {@code --warmup=10} and {@code --duration=30} (seconds).
+ */
+public final class LoadTest {
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99, 0.999};
+
+    private final Map<String, String> options;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        List<String> rows = new ArrayList<>();
+        rows.add(Result.CSV_HEADER);
+        for (String pool : option("pools", "5,10,20").split(",")) {
+            int poolSize = Integer.parseInt(pool.trim());
+            List<Result> results = runWithPool(poolSize);
+            results.forEach(result -> {
+                System.out.println(result);
+                rows.add(result.csv());
+            });
+        }
+        Path report = Path.of("target", "load-test.csv");
+        Files.createDirectories(report.getParent());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report))) {
+            rows.forEach(writer::println);
+        }
+        System.out.println("Results written to " + report.toAbsolutePath());
+    }
+
+    private List<Result> runWithPool(int poolSize) throws Exception {
+        ServletWebServerApplicationContext context = BenchmarkContext.startWeb(option("backend", BenchmarkContext.JPA),
+                "spring.profiles.active=" + option("profile", "production"),
+                "spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                "spring.datasource.hikari.minimum-idle=" + poolSize);
+        int clients = Integer.parseInt(option("clients", "32"));
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(clients);
+        try {
+            ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+            String baseUrl = "http://localhost:" + context.getWebServer().getPort()
+                    + "/app" + WebConstant.VERSION_URL + "/user";
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .build();
+            Scenario scenario = new Scenario(client, baseUrl,
+                    objectMapper.writeValueAsBytes(BenchmarkData.userBookRequest(Integer.parseInt(option("books", "5")))),
+                    Double.parseDouble(option("get-ratio", "0.8")));
+
+            int userCount = Integer.parseInt(option("users", "1000"));
+            long[] userIds = new long[userCount];
+            for (int i = 0; i < userCount; i++) {
+                HttpResponse<byte[]> response = scenario.create();
+                userIds[i] = objectMapper.readValue(response.body(), UserBookResponse.class).getUserId();
+            }
+            scenario.userIds = userIds;
+
+            runClients(clientExecutor, scenario, clients, TimeUnit.SECONDS.toNanos(Long.parseLong(option("warmup", "10"))));
+            List<Recorder> recorders = runClients(clientExecutor, scenario, clients,
+                    TimeUnit.SECONDS.toNanos(Long.parseLong(option("duration", "30"))));
+            double seconds = Double.parseDouble(option("duration", "30"));
+            return List.of(
+                    Result.of("create", poolSize, clients, seconds, recorders.stream().map(r -> r.creates).toList()),
+                    Result.of("get", poolSize, clients, seconds, recorders.stream().map(r -> r.gets).toList()));
+        } finally {
+            clientExecutor.shutdownNow();
+            context.close();
+        }
+    }
+
+    private static List<Recorder> runClients(ExecutorService executor, Scenario scenario,
+                                             int clients, long durationNanos) throws Exception {
+        long deadline = System.nanoTime() + durationNanos;
+        List<Future<Recorder>> futures = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            futures.add(executor.submit(() -> {
+                Recorder recorder = new Recorder();
+                while (System.nanoTime() < deadline) {
+                    scenario.next(recorder);
+                }
+                return recorder;
+            }));
+        }
+        List<Recorder> recorders = new ArrayList<>(clients);
+        for (Future<Recorder> future : futures) {
+            recorders.add(future.get());
+        }
+        return recorders;
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static final class Scenario {
+        private final HttpClient client;
+        private final String baseUrl;
+        private final byte[] createBody;
+        private final double getRatio;
+        private long[] userIds;
+
+        Scenario(HttpClient client, String baseUrl, byte[] createBody, double getRatio) {
+            this.client = client;
+            this.baseUrl = baseUrl;
+            this.createBody = createBody;
+            this.getRatio = getRatio;
+        }
+
+        void next(Recorder recorder) throws IOException, InterruptedException {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            boolean get = random.nextDouble() < getRatio;
+            long start = System.nanoTime();
+            HttpResponse<byte[]> response = get
+                    ? get(userIds[random.nextInt(userIds.length)])
+                    : create();
+            (get ? recorder.gets : recorder.creates).record(System.nanoTime() - start, response.statusCode());
+        }
+
+        HttpResponse<byte[]> create() throws IOException, InterruptedException {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/create"))
+                    .header("Content-Type", "application/json")
+                    .header(WebConstant.RQID, "load-test")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(createBody))
+                    .build();
+            return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        }
+
+        HttpResponse<byte[]> get(long userId) throws IOException, InterruptedException {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/get/" + userId)).GET().build();
+            return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        }
+    }
+
+    private static final class Recorder {
+        private final Latencies creates = new Latencies();
+        private final Latencies gets = new Latencies();
+    }
+
+    /**
+     * Latencies of one client thread, in nanoseconds.
+     */
+    private static final class Latencies {
+        private long[] values = new long[1024];
+        private int count;
+        private long errors;
+
+        void record(long nanos, int status) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+            if (status >= 400) {
+                errors++;
+            }
+        }
+    }
+
+    private record Result(String operation, int poolSize, int clients, long requests, long errors,
+                          double throughput, double[] percentileMillis, double maxMillis) {
+        static final String CSV_HEADER = "operation,pool,clients,requests,errors,throughput,p50_ms,p95_ms,p99_ms,p999_ms,max_ms";
+
+        static Result of(String operation, int poolSize, int clients, double seconds, List<Latencies> latencies) {
+            int count = latencies.stream().mapToInt(l -> l.count).sum();
+            long[] all = new long[count];
+            int offset = 0;
+            long errors = 0;
+            for (Latencies l : latencies) {
+                System.arraycopy(l.values, 0, all, offset, l.count);
+                offset += l.count;
+                errors += l.errors;
+            }
+            Arrays.sort(all);
+            double[] percentileMillis = new double[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                percentileMillis[i] = count == 0 ? 0 : all[(int) Math.min(count - 1, Math.ceil(PERCENTILES[i] * count) - 1)] / 1e6;
+            }
+            return new Result(operation, poolSize, clients, count, errors, count / seconds, percentileMillis,
+                    count == 0 ? 0 : all[count - 1] / 1e6);
+        }
+
+        String csv() {
+            return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                    operation, poolSize, clients, requests, errors, throughput,
+                    percentileMillis[0], percentileMillis[1], percentileMillis[2], percentileMillis[3], maxMillis);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "pool %3d, %3d clients, %-6s %8d requests (%d errors) %10.1f req/s  "
+                            + "p50 %7.3f  p95 %7.3f  p99 %7.3f  p99.9 %7.3f  max %7.3f ms",
+                    poolSize, clients, operation, requests, errors, throughput,
+                    percentileMillis[0], percentileMillis[1], percentileMillis[2], percentileMillis[3], maxMillis);
+        }
+    }
+}
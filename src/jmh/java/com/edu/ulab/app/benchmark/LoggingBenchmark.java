@@ -0,0 +1,54 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of request logging in createUserWithBooks: payloads are logged only at DEBUG,
+ * so DEBUG with the synchronous FILE appender is close to the former INFO payload logging.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LoggingBenchmark {
+    @Param({"INFO", "DEBUG"})
+    public String logLevel;
+
+    @Param({"FILE", "ASYNC_FILE"})
+    public String appender;
+
+    @Param({"10"})
+    public int bookCount;
+
+    private ConfigurableApplicationContext context;
+    private UserDataFacade userDataFacade;
+    private UserBookRequest request;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(BenchmarkContext.IN_MEMORY,
+                "logging.config=classpath:logback-benchmark.xml",
+                "benchmark.appender=" + appender,
+                "logging.level.com.edu.ulab.app=" + logLevel);
+        userDataFacade = context.getBean(UserDataFacade.class);
+        request = BenchmarkData.userBookRequest(bookCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserBookResponse createUserWithBooks() {
+        return userDataFacade.createUserWithBooks(request);
+    }
+}
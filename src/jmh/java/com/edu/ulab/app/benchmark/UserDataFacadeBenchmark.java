@@ -0,0 +1,72 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserDataFacadeBenchmark {
+    @Param({BenchmarkContext.JPA, BenchmarkContext.JDBC, BenchmarkContext.IN_MEMORY})
+    public String backend;
+
+    @Param({"1", "10", "100", "1000"})
+    public int bookCount;
+
+    private ConfigurableApplicationContext context;
+    private UserDataFacade userDataFacade;
+    private UserBookRequest request;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(backend);
+        userDataFacade = context.getBean(UserDataFacade.class);
+        request = BenchmarkData.userBookRequest(bookCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserBookResponse createUserWithBooks() {
+        return userDataFacade.createUserWithBooks(request);
+    }
+
+    /**
+     * Each thread updates its own user, changing one book per call.
+     */
+    @Benchmark
+    public UserBookResponse updateOneBook(UpdateState state) {
+        BookRequest bookRequest = state.request.getBookRequests().get(state.next++ % bookCount);
+        bookRequest.setPageCount(bookRequest.getPageCount() + 1);
+        return userDataFacade.updateUserWithBooks(state.userId, state.request);
+    }
+
+    @State(Scope.Thread)
+    public static class UpdateState {
+        Long userId;
+        UserBookRequest request;
+        int next;
+
+        @Setup
+        public void setUp(UserDataFacadeBenchmark benchmark) {
+            request = BenchmarkData.userBookRequest(benchmark.bookCount);
+            UserBookResponse response = benchmark.userDataFacade.createUserWithBooks(request);
+            userId = response.getUserId();
+            for (int i = 0; i < benchmark.bookCount; i++) {
+                request.getBookRequests().get(i).setId(response.getBooksIdList()[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserServiceBenchmark {
+    @Param({BenchmarkContext.JPA, BenchmarkContext.JDBC, BenchmarkContext.IN_MEMORY})
+    public String backend;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private Long userId;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start(backend);
+        userService = BenchmarkContext.userService(context, backend);
+        userId = userService.createUser(BenchmarkData.user()).getId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserDto createUser() {
+        return userService.createUser(BenchmarkData.user());
+    }
+
+    @Benchmark
+    public UserDto getUserById() {
+        return userService.getUserById(userId);
+    }
+}
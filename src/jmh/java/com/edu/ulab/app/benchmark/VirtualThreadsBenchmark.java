@@ -0,0 +1,99 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.facade.UserDataFacade;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to serve a burst of concurrent list requests over HTTP on Tomcat's platform thread
+ * pool and on virtual threads behind the bulkhead. Requests rejected by the bulkhead
+ * are counted. The virtual thread mode needs the benchmark to run on Java 21.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class VirtualThreadsBenchmark {
+    private static final int USER_COUNT = 200;
+
+    @Param({BenchmarkContext.JPA, BenchmarkContext.JDBC})
+    public String backend;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"100", "1000"})
+    public int concurrency;
+
+    private ServletWebServerApplicationContext context;
+    private ExecutorService clientExecutor;
+    private HttpClient client;
+    private HttpRequest[] requests;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.startWeb(backend,
+                "app.threads.virtual=" + virtualThreads,
+                "app.threads.acquire-timeout=10s");
+        UserDataFacade userDataFacade = context.getBean(UserDataFacade.class);
+        for (int i = 0; i < USER_COUNT; i++) {
+            userDataFacade.createUserWithBooks(BenchmarkData.userBookRequest(5));
+        }
+        clientExecutor = Executors.newFixedThreadPool(4);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+        String baseUrl = "http://localhost:" + context.getWebServer().getPort() + "/app/api/v1/user/list?limit=20&afterId=";
+        requests = new HttpRequest[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            requests[i] = HttpRequest.newBuilder(URI.create(baseUrl + (i % USER_COUNT))).GET().build();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        clientExecutor.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public void listUsersBurst(Rejections rejections) {
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            responses[i] = client.sendAsync(requests[i], HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> {
+                        if (response.statusCode() == 503) {
+                            rejections.add();
+                        }
+                    });
+        }
+        CompletableFuture.allOf(responses).join();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Rejections {
+        public long rejections;
+
+        synchronized void add() {
+            rejections++;
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rejections = 0;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.edu.ulab.app.cache;
+
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.BookStatsProperties;
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserBookSummaryDto;
+import com.edu.ulab.app.exception.NotFoundException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Book summary of every user: book count, total page count and distinct authors, built
+ * from the BOOK table on startup and then changed by the deltas of the database services
+ * instead of being computed again. A summary is read without touching the books.
+ * <p>
+ * Authors are counted per user, so an author leaves the summary with the last of their
+ * books. Deltas inside a transaction are applied on commit; an update is the removal of
+ * the old book and the addition of the new one. Books of a user that isn't tracked are
+ * ignored, so a late delta can't bring back a deleted user.
+ * <p>
+ * Like the user existence filter, the stats are created after the schema and data
+ * scripts ran.
+ */
+@Slf4j
+@Component
+@DependsOnDatabaseInitialization
+public class UserBookStats {
+    private static final int SCAN_FETCH_SIZE = 1000;
+
+    private final boolean active;
+    private final Map<Long, Stats> statsByUserId = new ConcurrentHashMap<>();
+
+    public UserBookStats(BookStatsProperties properties,
+                         BackendProperties backendProperties,
+                         DataSource dataSource,
+                         MeterRegistry meterRegistry) {
+        this.active = properties.isEnabled() && backendProperties.getWrite() != BackendProperties.Backend.IN_MEMORY;
+        Gauge.builder(MetricsConfig.BOOK_STATS_USERS, statsByUserId, Map::size)
+                .description("Users with a book summary kept in memory")
+                .register(meterRegistry);
+        if (active) {
+            load(dataSource);
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @throws NotFoundException if no user has the id
+     */
+    public UserBookSummaryDto getSummary(Long userId) {
+        Stats stats = statsByUserId.get(userId);
+        if (stats == null) {
+            throw new NotFoundException("User with id " + userId + " not found");
+        }
+        return stats.summary(userId);
+    }
+
+    /**
+     * Summary computed from all books of the user, where no stats are kept.
+     */
+    public static UserBookSummaryDto summarize(Long userId, Collection<BookDto> bookDtos) {
+        Stats stats = new Stats();
+        bookDtos.forEach(bookDto -> stats.add(bookDto.getAuthor(), bookDto.getPageCount(), 1));
+        return stats.summary(userId);
+    }
+
+    public void addUser(Long userId) {
+        if (active && userId != null) {
+            afterCommit(() -> statsByUserId.putIfAbsent(userId, new Stats()));
+        }
+    }
+
+    public void removeUser(Long userId) {
+        if (active && userId != null) {
+            afterCommit(() -> statsByUserId.remove(userId));
+        }
+    }
+
+    public void addBook(BookDto bookDto) {
+        addBooks(List.of(bookDto));
+    }
+
+    public void addBooks(Collection<BookDto> bookDtos) {
+        apply(bookDtos, 1);
+    }
+
+    public void removeBook(BookDto bookDto) {
+        removeBooks(List.of(bookDto));
+    }
+
+    public void removeBooks(Collection<BookDto> bookDtos) {
+        apply(bookDtos, -1);
+    }
+
+    private void apply(Collection<BookDto> bookDtos, int sign) {
+        if (!active || bookDtos.isEmpty()) {
+            return;
+        }
+        // the dtos may change before the commit, their values are taken now
+        List<Delta> deltas = new ArrayList<>(bookDtos.size());
+        for (BookDto bookDto : bookDtos) {
+            deltas.add(new Delta(bookDto.getUserId(), bookDto.getAuthor(), bookDto.getPageCount()));
+        }
+        afterCommit(() -> {
+            for (Delta delta : deltas) {
+                Stats stats = delta.userId() == null ? null : statsByUserId.get(delta.userId());
+                if (stats != null) {
+                    stats.add(delta.author(), sign * delta.pageCount(), sign);
+                }
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void load(DataSource dataSource) {
+        final String SELECT_SQL = "SELECT P.ID, B.AUTHOR, COUNT(B.ID), COALESCE(SUM(B.PAGE_COUNT), 0) " +
+                "FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID WHERE P.DELETED = FALSE " +
+                "GROUP BY P.ID, B.AUTHOR";
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(SCAN_FETCH_SIZE);
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            Stats stats = statsByUserId.computeIfAbsent(rs.getLong(1), id -> new Stats());
+            int bookCount = rs.getInt(3);
+            if (bookCount > 0) {
+                stats.add(rs.getString(2), rs.getLong(4), bookCount);
+            }
+        });
+        log.info("Book stats loaded for {} users", statsByUserId.size());
+    }
+
+    private record Delta(Long userId, String author, long pageCount) {
+    }
+
+    /**
+     * Counters of one user, changed and read under its monitor.
+     */
+    private static final class Stats {
+        private long bookCount;
+        private long pageCount;
+        private final TreeMap<String, Integer> booksByAuthor = new TreeMap<>();
+
+        synchronized void add(String author, long pages, int books) {
+            bookCount += books;
+            pageCount += pages;
+            if (author == null) {
+                return;
+            }
+            if (books > 0) {
+                booksByAuthor.merge(author, books, Integer::sum);
+            } else {
+                booksByAuthor.computeIfPresent(author, (name, count) -> count + books > 0 ? count + books : null);
+            }
+        }
+
+        synchronized UserBookSummaryDto summary(Long userId) {
+            return UserBookSummaryDto.builder()
+                    .userId(userId)
+                    .bookCount(bookCount)
+                    .pageCount(pageCount)
+                    .authors(List.copyOf(booksByAuthor.keySet()))
+                    .build();
+        }
+    }
+}
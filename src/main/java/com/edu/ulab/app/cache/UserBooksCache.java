@@ -0,0 +1,42 @@
+package com.edu.ulab.app.cache;
+
+import com.edu.ulab.app.dto.BookDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Objects;
+
+import static com.edu.ulab.app.config.CacheConfig.USER_BOOKS_CACHE;
+
+/**
+ * Invalidation of cached user+books aggregates on book mutations.
+ * Inside a transaction the eviction is postponed until commit.
+ */
+@Slf4j
+@Component
+public class UserBooksCache {
+    private final Cache cache;
+
+    public UserBooksCache(CacheManager cacheManager) {
+        this.cache = new TransactionAwareCacheDecorator(
+                Objects.requireNonNull(cacheManager.getCache(USER_BOOKS_CACHE)));
+    }
+
+    public void evict(Long userId) {
+        if (userId != null) {
+            log.debug("Evict cached books of user {}", userId);
+            cache.evict(userId);
+        }
+    }
+
+    public void evictAll(Collection<BookDto> bookDtos) {
+        bookDtos.stream()
+                .map(BookDto::getUserId)
+                .distinct()
+                .forEach(this::evict);
+    }
+}
@@ -0,0 +1,203 @@
+package com.edu.ulab.app.cache;
+
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.config.UserFilterProperties;
+import com.edu.ulab.app.exception.NotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counting Bloom filter over the ids of existing users, filled from the PERSON table on
+ * startup and kept current by the database user services. An id it doesn't contain
+ * belongs to no user, so the lookup fails without a database round trip; an id it does
+ * contain may still be unknown (a false positive) and is looked up as usual.
+ * <p>
+ * Every id sets 4-bit counters, so a deleted user can be removed again. A counter that
+ * reached its maximum stays there. A removal inside a transaction waits for the commit:
+ * an id missing from the filter while its user still exists would hide that user.
+ * <p>
+ * The filter is created after the schema and data scripts ran, the table it loads
+ * doesn't exist before.
+ */
+@Slf4j
+@Component
+@DependsOnDatabaseInitialization
+public class UserExistenceFilter {
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long MAX_COUNT = (1 << COUNTER_BITS) - 1;
+    private static final int SCAN_FETCH_SIZE = 1000;
+
+    private final boolean active;
+    private final int counterCount;
+    private final int hashCount;
+    private final AtomicLongArray counters;
+    private final AtomicLong size = new AtomicLong();
+    private final Counter misses;
+    private final Counter falsePositives;
+
+    public UserExistenceFilter(UserFilterProperties properties,
+                               BackendProperties backendProperties,
+                               DataSource dataSource,
+                               MeterRegistry meterRegistry) {
+        this.active = properties.isEnabled() && backendProperties.getRead() != BackendProperties.Backend.IN_MEMORY;
+        int expectedUsers = Math.max(1, properties.getExpectedUsers());
+        double bits = -expectedUsers * Math.log(properties.getFalsePositiveRate()) / (Math.log(2) * Math.log(2));
+        this.counterCount = active ? (int) Math.min(Integer.MAX_VALUE - COUNTERS_PER_WORD, Math.ceil(bits)) : 0;
+        this.hashCount = Math.max(1, (int) Math.round(bits / expectedUsers * Math.log(2)));
+        this.counters = new AtomicLongArray((counterCount + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+
+        this.misses = Counter.builder(MetricsConfig.USER_FILTER_MISSES)
+                .description("User lookups rejected by the existence filter")
+                .register(meterRegistry);
+        this.falsePositives = Counter.builder(MetricsConfig.USER_FILTER_FALSE_POSITIVES)
+                .description("User lookups passed by the existence filter for unknown users")
+                .register(meterRegistry);
+        Gauge.builder(MetricsConfig.USER_FILTER_FALSE_POSITIVE_RATE, this, UserExistenceFilter::falsePositiveRate)
+                .description("Share of lookups of unknown users the existence filter passed")
+                .register(meterRegistry);
+        Gauge.builder(MetricsConfig.USER_FILTER_EXPECTED_FALSE_POSITIVE_RATE, this,
+                        UserExistenceFilter::expectedFalsePositiveRate)
+                .description("False positive rate of the existence filter expected at its current size")
+                .register(meterRegistry);
+
+        if (active) {
+            load(dataSource);
+        }
+    }
+
+    /**
+     * @throws NotFoundException if no user has the id
+     */
+    public void check(Long id) {
+        if (active && !mightContain(id)) {
+            misses.increment();
+            throw new NotFoundException("User with id " + id + " not found");
+        }
+    }
+
+    /**
+     * Records a lookup that passed {@link #check} and found no user.
+     */
+    public void falsePositive(Long id) {
+        if (active) {
+            log.debug("User existence filter passed unknown user {}", id);
+            falsePositives.increment();
+        }
+    }
+
+    public void add(Long id) {
+        if (active && id != null) {
+            update(id, 1);
+            size.incrementAndGet();
+        }
+    }
+
+    public void remove(Long id) {
+        if (!active || id == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeNow(id);
+                }
+            });
+        } else {
+            removeNow(id);
+        }
+    }
+
+    private void removeNow(long id) {
+        update(id, -1);
+        size.decrementAndGet();
+    }
+
+    private void load(DataSource dataSource) {
+        final String SELECT_SQL = "SELECT ID FROM PERSON WHERE DELETED = FALSE";
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(SCAN_FETCH_SIZE);
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            add(rs.getLong(1));
+        });
+        log.info("User existence filter loaded with {} users: {} counters, {} hashes",
+                size.get(), counterCount, hashCount);
+    }
+
+    private boolean mightContain(long id) {
+        long hash = mix(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int index = Math.floorMod(h1 + (long) i * h2, counterCount);
+            if (count(counters.get(index / COUNTERS_PER_WORD), index) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void update(long id, int delta) {
+        long hash = mix(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int index = Math.floorMod(h1 + (long) i * h2, counterCount);
+            int word = index / COUNTERS_PER_WORD;
+            long current;
+            long updated;
+            do {
+                current = counters.get(word);
+                long count = count(current, index);
+                if (count == MAX_COUNT || count + delta < 0) {
+                    break;
+                }
+                updated = current + ((long) delta << shift(index));
+            } while (!counters.compareAndSet(word, current, updated));
+        }
+    }
+
+    private static long count(long word, int index) {
+        return (word >>> shift(index)) & MAX_COUNT;
+    }
+
+    private static int shift(int index) {
+        return index % COUNTERS_PER_WORD * COUNTER_BITS;
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreads sequential ids over all bits.
+     */
+    private static long mix(long id) {
+        long z = id;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private double falsePositiveRate() {
+        double passed = falsePositives.count();
+        double total = passed + misses.count();
+        return total == 0 ? 0 : passed / total;
+    }
+
+    private double expectedFalsePositiveRate() {
+        if (!active) {
+            return 0;
+        }
+        return Math.pow(1 - Math.exp(-(double) hashCount * Math.max(0, size.get()) / counterCount), hashCount);
+    }
+}
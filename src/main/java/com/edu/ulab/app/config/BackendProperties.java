@@ -0,0 +1,34 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.backend")
+public class BackendProperties {
+    /**
+     * Backend of getUserById, getBookById and getBookIdsByUserId.
+     */
+    private Backend read = Backend.JPA;
+    /**
+     * Backend of create, update and delete operations.
+     */
+    private Backend write = Backend.JPA;
+
+    public enum Backend {
+        JPA,
+        JDBC,
+        IN_MEMORY
+    }
+
+    /**
+     * JPA and JDBC share the database, the in-memory storage shares nothing,
+     * so it can serve reads only for its own writes.
+     */
+    public void checkConsistency() {
+        if (read != write && (read == Backend.IN_MEMORY || write == Backend.IN_MEMORY)) {
+            throw new IllegalStateException("In-memory backend can't be combined with a database one: read "
+                    + read + ", write " + write);
+        }
+    }
+}
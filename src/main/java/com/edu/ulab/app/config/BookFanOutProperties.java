@@ -0,0 +1,19 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.book-fan-out")
+public class BookFanOutProperties {
+    /**
+     * Books of a created user from which they are inserted in concurrent partitions, 0 disables.
+     */
+    private int threshold = 0;
+    /**
+     * Partitions of a request and threads inserting them; each thread holds a connection,
+     * so keep it well below the connection pool size. The request bulkhead leaves these
+     * connections to the threads.
+     */
+    private int parallelism = 4;
+}
@@ -0,0 +1,15 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.book-stats")
+public class BookStatsProperties {
+    /**
+     * Keep book count, page count and authors of every user in memory, updated with each
+     * book write. Applies to the database backends only, the in-memory backend computes
+     * a summary from the books of the user.
+     */
+    private boolean enabled = true;
+}
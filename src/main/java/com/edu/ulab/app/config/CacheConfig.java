@@ -0,0 +1,10 @@
+package com.edu.ulab.app.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+@EnableCaching
+@Configuration
+public class CacheConfig {
+    public static final String USER_BOOKS_CACHE = "userBooks";
+}
@@ -0,0 +1,35 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.delete")
+public class DeleteProperties {
+    /**
+     * How the database backends delete a user with books.
+     */
+    private Mode mode = Mode.HARD;
+    /**
+     * Pause between purges of soft deleted users.
+     */
+    private Duration purgeInterval = Duration.ofSeconds(10);
+    /**
+     * Rows deleted per purge transaction.
+     */
+    private int purgeChunkSize = 1000;
+
+    public enum Mode {
+        /**
+         * The user row is deleted at once, the books go with it by ON DELETE CASCADE.
+         */
+        HARD,
+        /**
+         * The user is only marked deleted and hidden from reads, and queued in PERSON_PURGE;
+         * a background job purges the books and the user in chunks.
+         */
+        SOFT
+    }
+}
@@ -0,0 +1,13 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.export")
+public class ExportProperties {
+    /**
+     * Rows fetched per round trip by the export cursors; users per page with the in-memory backend.
+     */
+    private int fetchSize = 1000;
+}
@@ -0,0 +1,13 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.import")
+public class ImportProperties {
+    /**
+     * Records written and committed together by the bulk import.
+     */
+    private int chunkSize = 500;
+}
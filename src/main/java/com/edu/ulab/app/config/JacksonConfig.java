@@ -0,0 +1,22 @@
+package com.edu.ulab.app.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Modules registered by Spring Boot in the application {@code ObjectMapper}, which serves
+ * both the MVC message converters and the NDJSON import and export.
+ */
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * Property access through generated lambdas instead of reflection.
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
@@ -0,0 +1,34 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.locking")
+public class LockingProperties {
+    /**
+     * Isolation of concurrent updates of the same user.
+     */
+    private Mode mode = Mode.OPTIMISTIC;
+    /**
+     * Attempts of an optimistic update before the conflict is returned to the client.
+     */
+    private int maxAttempts = 3;
+    /**
+     * Upper bound of the random pause before a retry, grows with the attempt number.
+     */
+    private Duration retryBackoff = Duration.ofMillis(5);
+
+    public enum Mode {
+        /**
+         * Versioned writes, the whole update is retried on a conflict.
+         */
+        OPTIMISTIC,
+        /**
+         * The user row is locked for the duration of the update.
+         */
+        PESSIMISTIC
+    }
+}
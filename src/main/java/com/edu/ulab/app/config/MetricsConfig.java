@@ -0,0 +1,42 @@
+package com.edu.ulab.app.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Facade and service methods are timed through {@code @Timed} with {@code class}/{@code method}
+ * tags, repositories by Spring Boot ({@code spring.data.repository.invocations}).
+ */
+@Configuration
+public class MetricsConfig {
+    public static final String FACADE_TIMER = "app.facade";
+    public static final String SERVICE_TIMER = "app.service";
+    public static final String BOOKS_PER_REQUEST = "app.facade.books.per.request";
+    public static final String BULKHEAD_AVAILABLE = "app.bulkhead.available";
+    public static final String BULKHEAD_REJECTED = "app.bulkhead.rejected";
+    public static final String WRITE_BEHIND_PENDING = "app.write-behind.pending";
+    public static final String WRITE_BEHIND_REJECTED = "app.write-behind.rejected";
+    public static final String USER_FILTER_MISSES = "app.user-filter.misses";
+    public static final String USER_FILTER_FALSE_POSITIVES = "app.user-filter.false-positives";
+    public static final String USER_FILTER_FALSE_POSITIVE_RATE = "app.user-filter.false-positive.rate";
+    public static final String USER_FILTER_EXPECTED_FALSE_POSITIVE_RATE = "app.user-filter.expected.false-positive.rate";
+    public static final String BOOK_STATS_USERS = "app.book-stats.users";
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public DistributionSummary booksPerRequestSummary(MeterRegistry meterRegistry) {
+        return DistributionSummary.builder(BOOKS_PER_REQUEST)
+                .description("Number of books in a user book request")
+                .baseUnit("books")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
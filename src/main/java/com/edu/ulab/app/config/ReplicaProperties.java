@@ -0,0 +1,26 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "app.replicas")
+public class ReplicaProperties {
+    /**
+     * Route read-only transactions to the read replicas, everything else to spring.datasource.
+     */
+    private boolean enabled = false;
+    /**
+     * JDBC URLs of the replicas; they share the credentials and pool settings of spring.datasource.
+     */
+    private List<String> urls = new ArrayList<>();
+    /**
+     * How long the reads of a request id stay on the primary after its last write,
+     * so a client reads its own writes despite the replication lag.
+     */
+    private Duration stickiness = Duration.ofSeconds(5);
+}
@@ -0,0 +1,24 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.threads")
+public class ThreadsProperties {
+    /**
+     * Serve requests, and the service calls made by them, on virtual threads. Needs Java 21.
+     */
+    private boolean virtual = false;
+    /**
+     * API requests served at once in the virtual thread mode, 0 for the size of the connection pool;
+     * at most the pool size less the book fan-out connections.
+     */
+    private int maxConcurrentRequests = 0;
+    /**
+     * Wait of a request for its turn before it is rejected with 503.
+     */
+    private Duration acquireTimeout = Duration.ofSeconds(1);
+}
@@ -0,0 +1,22 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.user-filter")
+public class UserFilterProperties {
+    /**
+     * Reject lookups of unknown user ids from an in-memory filter, without the database.
+     * Applies to the database read backends only.
+     */
+    private boolean enabled = true;
+    /**
+     * Users the filter is sized for; beyond it the false positive rate grows.
+     */
+    private int expectedUsers = 1_000_000;
+    /**
+     * False positive rate at the expected number of users.
+     */
+    private double falsePositiveRate = 0.01;
+}
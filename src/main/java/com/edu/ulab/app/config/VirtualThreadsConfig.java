@@ -0,0 +1,92 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.facade.ParallelBookWriter;
+import com.edu.ulab.app.web.constant.WebConstant;
+import com.edu.ulab.app.web.filter.RequestBulkheadFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual thread mode ({@code app.threads.virtual}): Tomcat runs every request on a new
+ * virtual thread, so a request blocked on the database holds no platform thread.
+ * <p>
+ * The number of requests is then bounded by nothing but connections, so API requests
+ * pass a bulkhead sized to the connection pool: surplus requests wait in line on
+ * a semaphore instead of timing out inside the pool. The connections of the book fan-out
+ * threads are left out of the bulkhead, so a request waiting for its partitions never
+ * holds the last connection they need.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "app.threads", name = "virtual", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsCustomizer() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        log.info("Serving requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    @Bean
+    public FilterRegistrationBean<RequestBulkheadFilter> requestBulkheadFilter(ThreadsProperties threadsProperties,
+                                                                               DataSource dataSource,
+                                                                               ParallelBookWriter parallelBookWriter,
+                                                                               ObjectMapper objectMapper,
+                                                                               MeterRegistry meterRegistry)
+            throws SQLException {
+        int poolSize = poolSize(dataSource, threadsProperties);
+        int requestConnections = poolSize - parallelBookWriter.connections();
+        if (requestConnections < 1) {
+            throw new IllegalStateException("Connection pool of " + poolSize + " leaves no connection to requests "
+                    + "besides the book fan-out parallelism " + parallelBookWriter.connections());
+        }
+        int permits = threadsProperties.getMaxConcurrentRequests() > 0
+                ? Math.min(threadsProperties.getMaxConcurrentRequests(), requestConnections)
+                : requestConnections;
+        log.info("API requests served at once: {}", permits);
+        FilterRegistrationBean<RequestBulkheadFilter> registration = new FilterRegistrationBean<>(
+                new RequestBulkheadFilter(permits, threadsProperties.getAcquireTimeout(), objectMapper, meterRegistry));
+        registration.addUrlPatterns(WebConstant.VERSION_URL + "/*");
+        return registration;
+    }
+
+    /**
+     * An unknown pool is taken to be as large as the explicit request limit.
+     */
+    private static int poolSize(DataSource dataSource, ThreadsProperties threadsProperties) throws SQLException {
+        if (dataSource.isWrapperFor(HikariConfigMXBean.class)) {
+            return dataSource.unwrap(HikariConfigMXBean.class).getMaximumPoolSize();
+        }
+        if (threadsProperties.getMaxConcurrentRequests() <= 0) {
+            throw new IllegalStateException("Connection pool size is unknown, set app.threads.max-concurrent-requests");
+        }
+        return threadsProperties.getMaxConcurrentRequests();
+    }
+
+    /**
+     * The build targets Java 17, the executor is looked up on the running JVM.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads need Java 21, running on " + Runtime.version());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't create virtual thread executor", e);
+        }
+    }
+}
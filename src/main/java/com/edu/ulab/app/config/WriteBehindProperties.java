@@ -0,0 +1,44 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.write-behind")
+public class WriteBehindProperties {
+    /**
+     * Answer created users with pre-allocated ids and write them in the background.
+     * Needs a database write backend.
+     */
+    private boolean enabled = false;
+    /**
+     * Rows, users and books, accepted but not yet written; a request waits for room.
+     */
+    private int capacity = 100_000;
+    /**
+     * Wait of a request for room before it is rejected with 503.
+     */
+    private Duration offerTimeout = Duration.ofSeconds(1);
+    /**
+     * Rows written together in one transaction.
+     */
+    private int batchSize = 5_000;
+    /**
+     * Wait for more requests before a batch smaller than the batch size is written.
+     */
+    private Duration maxDelay = Duration.ofMillis(50);
+    /**
+     * Directory of the journal of accepted requests, replayed on startup.
+     */
+    private String journalDirectory = "write-behind";
+    /**
+     * Size of one journal segment file in bytes, must not change between restarts.
+     */
+    private int journalSegmentSize = 16 * 1024 * 1024;
+    /**
+     * Force every journal record to disk, otherwise it is left to the OS page cache.
+     */
+    private boolean fsync = false;
+}
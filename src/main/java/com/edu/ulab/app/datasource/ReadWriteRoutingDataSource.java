@@ -0,0 +1,104 @@
+package com.edu.ulab.app.datasource;
+
+import com.edu.ulab.app.web.filter.HttpRequestFilter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the connections of read-only transactions to the replicas in turn and all
+ * others to the primary. A request id that used the primary keeps its reads there for
+ * the stickiness period after the transaction ends, so the client reads its own writes
+ * while the replicas catch up.
+ * <p>
+ * The decision is made when a connection is obtained, so the data source has to be
+ * wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}:
+ * the transaction managers obtain the connection before the read-only flag of the
+ * transaction is exposed.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica-";
+
+    private final int replicaCount;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Cache<String, Boolean> stickyRequests;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration stickiness) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica is required");
+        }
+        this.replicaCount = replicas.size();
+        this.stickyRequests = Caffeine.newBuilder()
+                .expireAfterWrite(stickiness)
+                .build();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(REPLICA + i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String requestId = MDC.get(HttpRequestFilter.REQUEST_ID);
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            markSticky(requestId);
+            return PRIMARY;
+        }
+        if (requestId != null && stickyRequests.getIfPresent(requestId) != null) {
+            return PRIMARY;
+        }
+        return REPLICA + Math.floorMod(nextReplica.getAndIncrement(), replicaCount);
+    }
+
+    /**
+     * Closes the connection pools of the primary and the replicas.
+     */
+    @Override
+    public void close() {
+        for (DataSource dataSource : getResolvedDataSources().values()) {
+            if (dataSource instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    log.warn("Can't close data source {}", dataSource, e);
+                }
+            }
+        }
+    }
+
+    private void markSticky(String requestId) {
+        if (requestId == null) {
+            return;
+        }
+        stickyRequests.put(requestId, Boolean.TRUE);
+        // the replicas lag behind the commit, not behind the first statement
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    stickyRequests.put(requestId, Boolean.TRUE);
+                }
+            });
+        }
+    }
+}
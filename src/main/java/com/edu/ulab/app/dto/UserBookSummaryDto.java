@@ -0,0 +1,18 @@
+package com.edu.ulab.app.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class UserBookSummaryDto {
+    private Long userId;
+    private long bookCount;
+    private long pageCount;
+    /**
+     * Distinct authors of the books in alphabetical order.
+     */
+    private List<String> authors;
+}
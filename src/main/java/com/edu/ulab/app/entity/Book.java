@@ -9,12 +9,15 @@ import javax.persistence.*;
 @Data
 public class Book {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "BOOK_SEQ", initialValue = 10000, allocationSize = 50)
     private Long id;
     private Long userId;
     private String title;
     private String author;
     private long pageCount;
+    @Version
+    private Long version;
 
 
 }
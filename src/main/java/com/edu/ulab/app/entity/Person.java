@@ -3,17 +3,23 @@ package com.edu.ulab.app.entity;
 
 
 import lombok.Data;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.*;
 
 
 @Entity
 @Data
+@Where(clause = "NOT DELETED")
 public class Person {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "person_seq")
+    @SequenceGenerator(name = "person_seq", sequenceName = "PERSON_SEQ", initialValue = 10000, allocationSize = 50)
     private Long id;
     private String fullName;
     private String title;
     private int age;
+    @Version
+    private Long version;
+    private boolean deleted;
 }
@@ -0,0 +1,158 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.config.BookFanOutProperties;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.service.BookService;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates a large list of books in contiguous partitions inserted concurrently, each by
+ * its own batch on its own connection and transaction.
+ * <p>
+ * The executor is shared by all requests and bounded: when its queue is full the request
+ * thread waits for room. It never inserts a partition itself, that would take a second
+ * connection next to its own; so the fan-out holds at most {@link #connections()}
+ * connections besides those of the requests. The partitions commit independently, so if
+ * one fails the books of the others are deleted before the failure is rethrown.
+ */
+@Slf4j
+@Component
+public class ParallelBookWriter {
+    private final BookService bookService;
+    private final BookFanOutProperties properties;
+    private final TransactionTemplate partitionTransaction;
+    private final ThreadPoolExecutor executor;
+
+    public ParallelBookWriter(BookService bookService,
+                              BookFanOutProperties properties,
+                              PlatformTransactionManager transactionManager) {
+        this.bookService = bookService;
+        this.properties = properties;
+        this.partitionTransaction = new TransactionTemplate(transactionManager);
+        this.partitionTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        int parallelism = Math.max(1, properties.getParallelism());
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(parallelism * 4),
+                new CustomizableThreadFactory("book-fan-out-"),
+                ParallelBookWriter::awaitQueue);
+    }
+
+    private static void awaitQueue(Runnable partition, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Book fan-out is shut down");
+        }
+        try {
+            executor.getQueue().put(partition);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for the book fan-out queue", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+    }
+
+    public boolean appliesTo(int bookCount) {
+        return isEnabled() && bookCount >= properties.getThreshold();
+    }
+
+    /**
+     * Connections the partition threads may hold at once, to be kept free of requests.
+     */
+    public int connections() {
+        return isEnabled() ? properties.getParallelism() : 0;
+    }
+
+    private boolean isEnabled() {
+        return properties.getThreshold() > 0 && properties.getParallelism() > 1;
+    }
+
+    /**
+     * @return ids of the created books in the order of {@code bookDtos}
+     */
+    public long[] createBooks(List<BookDto> bookDtos) {
+        int partitionSize = (bookDtos.size() + properties.getParallelism() - 1) / properties.getParallelism();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        List<CompletableFuture<long[]>> partitions = new ArrayList<>();
+        for (int from = 0; from < bookDtos.size(); from += partitionSize) {
+            List<BookDto> partition = bookDtos.subList(from, Math.min(from + partitionSize, bookDtos.size()));
+            partitions.add(CompletableFuture.supplyAsync(() -> createPartition(partition, mdc), executor));
+        }
+
+        long[] bookIds = new long[bookDtos.size()];
+        boolean[] createdPartitions = new boolean[partitions.size()];
+        RuntimeException failure = null;
+        for (int i = 0; i < partitions.size(); i++) {
+            try {
+                long[] partitionIds = partitions.get(i).join();
+                System.arraycopy(partitionIds, 0, bookIds, i * partitionSize, partitionIds.length);
+                createdPartitions[i] = true;
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException cause ? cause : e;
+                }
+            }
+        }
+        if (failure != null) {
+            List<BookDto> created = new ArrayList<>();
+            for (int i = 0; i < partitions.size(); i++) {
+                int to = Math.min((i + 1) * partitionSize, bookDtos.size());
+                for (int j = i * partitionSize; createdPartitions[i] && j < to; j++) {
+                    created.add(createdBook(bookIds[j], bookDtos.get(j)));
+                }
+            }
+            log.warn("Book partition failed, deleting {} books of the other partitions", created.size());
+            if (!created.isEmpty()) {
+                bookService.deleteBooks(created);
+            }
+            throw failure;
+        }
+        log.debug("Created {} books in {} partitions", bookIds.length, partitions.size());
+        return bookIds;
+    }
+
+    /**
+     * Identity of a created book for a compensating delete, which needs no version.
+     */
+    private static BookDto createdBook(long id, BookDto bookDto) {
+        BookDto created = new BookDto();
+        created.setId(id);
+        created.setUserId(bookDto.getUserId());
+        return created;
+    }
+
+    private long[] createPartition(List<BookDto> partition, Map<String, String> mdc) {
+        Map<String, String> callerMdc = MDC.getCopyOfContextMap();
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        try {
+            return partitionTransaction.execute(status -> bookService.createBooks(new ArrayList<>(partition)));
+        } finally {
+            if (callerMdc != null) {
+                MDC.setContextMap(callerMdc);
+            } else {
+                MDC.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.edu.ulab.app.facade;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ids from a database sequence, allocated in blocks the way the Hibernate pooled
+ * optimizer does: a fetched value {@code v} reserves {@code (v - increment, v]}.
+ * The JDBC services insert the fetched values themselves, and every fetched value
+ * falls into the block of whoever fetched it, so none of them collide.
+ */
+class PooledSequence {
+    private final JdbcTemplate jdbcTemplate;
+    private final String selectSql;
+    private final int increment;
+    private final long initialValue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long next = 1;
+    private long hi = 0;
+
+    PooledSequence(JdbcTemplate jdbcTemplate, String sequenceName, int increment, long initialValue) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.selectSql = "SELECT NEXT VALUE FOR " + sequenceName;
+        this.increment = increment;
+        this.initialValue = initialValue;
+    }
+
+    long[] next(int count) {
+        long[] ids = new long[count];
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                if (next > hi) {
+                    hi = Objects.requireNonNull(jdbcTemplate.queryForObject(selectSql, Long.class));
+                    next = Math.max(hi - increment + 1, initialValue);
+                }
+                ids[i] = next++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ids;
+    }
+}
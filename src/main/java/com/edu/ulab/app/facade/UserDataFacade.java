@@ -1,51 +1,113 @@
 package com.edu.ulab.app.facade;
 
+import com.edu.ulab.app.cache.UserBookStats;
+import com.edu.ulab.app.cache.UserExistenceFilter;
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.LockingProperties;
+import com.edu.ulab.app.config.MetricsConfig;
 import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserBookSummaryDto;
 import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.BookMapper;
 import com.edu.ulab.app.mapper.UserMapper;
-
-import com.edu.ulab.app.service.impl.BookServiceImpl;
-import com.edu.ulab.app.service.impl.BookServiceImplTemplate;
-import com.edu.ulab.app.service.impl.UserServiceImpl;
-import com.edu.ulab.app.service.impl.UserServiceImplTemplate;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
 import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.BookResponse;
 import com.edu.ulab.app.web.response.UserBookResponse;
+import com.edu.ulab.app.web.response.UserBookSummaryResponse;
+import com.edu.ulab.app.web.response.UserPageResponse;
+import com.edu.ulab.app.web.response.UserResponse;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.edu.ulab.app.config.CacheConfig.USER_BOOKS_CACHE;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
+@Timed(value = MetricsConfig.FACADE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
 public class UserDataFacade {
-    private final UserServiceImpl userService;
-    private final BookServiceImpl bookService;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final UserService userService;
+    private final BookService bookService;
     private final UserMapper userMapper;
     private final BookMapper bookMapper;
+    private final DistributionSummary booksPerRequestSummary;
+    private final LockingProperties lockingProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ParallelBookWriter parallelBookWriter;
+    private final WriteBehindWriter writeBehindWriter;
+    private final UserExistenceFilter userExistenceFilter;
+    private final UserBookStats userBookStats;
+    private final BackendProperties backendProperties;
 
+    /**
+     * Creates the user with books in one transaction. Books inserted in parallel partitions
+     * commit separately, and the in-memory backend has no transactions, so there the user
+     * is deleted again if the books fail. In the write-behind mode the request is only
+     * accepted and written later.
+     */
     public UserBookResponse createUserWithBooks(UserBookRequest userBookRequest) {
-        log.info("Got user book create request: {}", userBookRequest);
+        log.debug("Got user book create request: {}", userBookRequest);
+        if (userBookRequest.getUserRequest() == null) {
+            throw new IllegalArgumentException("User is missing");
+        }
         UserDto userDto = userMapper.userRequestToUserDto(userBookRequest.getUserRequest());
-        log.info("Mapped user request: {}", userDto);
+        log.debug("Mapped user request: {}", userDto);
 
-        UserDto createdUser = userService.createUser(userDto);
-        log.info("Created user: {}", createdUser);
-
-        List<Long> bookIdList = userBookRequest.getBookRequests()
+        List<BookDto> bookDtos = userBookRequest.getBookRequests() == null
+                ? List.of()
+                : userBookRequest.getBookRequests()
                 .stream()
                 .filter(Objects::nonNull)
                 .map(bookMapper::bookRequestToBookDto)
-                .peek(bookDto -> bookDto.setUserId(createdUser.getId()))
-                .peek(mappedBookDto -> log.info("mapped book: {}", mappedBookDto))
-                .map(bookService::createBook)
-                .peek(createdBook -> log.info("Created book: {}", createdBook))
-                .map(BookDto::getId)
+                .peek(bookDto -> bookDto.setId(null))
                 .toList();
-        log.info("Collected book ids: {}", bookIdList);
+        log.debug("Mapped books: {}", bookDtos);
+        booksPerRequestSummary.record(bookDtos.size());
+
+        if (writeBehindWriter.isEnabled()) {
+            return writeBehindWriter.createUserWithBooks(userDto, bookDtos);
+        }
+        if (backendProperties.getWrite() == BackendProperties.Backend.IN_MEMORY
+                || parallelBookWriter.appliesTo(bookDtos.size())) {
+            UserDto createdUser = userService.createUser(userDto);
+            try {
+                return createBooks(createdUser, bookDtos);
+            } catch (RuntimeException e) {
+                userService.deleteUserById(createdUser.getId());
+                throw e;
+            }
+        }
+        return transactionTemplate.execute(status -> createBooks(userService.createUser(userDto), bookDtos));
+    }
+
+    private UserBookResponse createBooks(UserDto createdUser, List<BookDto> bookDtos) {
+        log.debug("Created user: {}", createdUser);
+        bookDtos.forEach(bookDto -> bookDto.setUserId(createdUser.getId()));
+        long[] bookIdList = parallelBookWriter.appliesTo(bookDtos.size())
+                ? parallelBookWriter.createBooks(bookDtos)
+                : bookService.createBooks(bookDtos);
+        log.info("Created user {} with {} books", createdUser.getId(), bookIdList.length);
 
         return UserBookResponse.builder()
                 .userId(createdUser.getId())
@@ -53,14 +115,210 @@ public class UserDataFacade {
                 .build();
     }
 
-    public UserBookResponse updateUserWithBooks(UserBookRequest userBookRequest) {
-        return null;
+    /**
+     * Applies the difference between the stored and the requested state: requested books
+     * without an id are inserted, changed ones updated, missing ones deleted. The user row
+     * is written only when its fields change. A request without books keeps the stored ones.
+     * <p>
+     * In the optimistic mode the writes are checked against the versions read at the start
+     * and a conflicting update is retried from scratch up to {@code app.locking.max-attempts}
+     * times. In the pessimistic mode the user row is locked instead.
+     */
+    public UserBookResponse updateUserWithBooks(Long userId, UserBookRequest userBookRequest) {
+        log.debug("Got user book update request for user {}: {}", userId, userBookRequest);
+        if (userBookRequest.getUserRequest() == null) {
+            throw new IllegalArgumentException("User is missing");
+        }
+        userExistenceFilter.check(userId);
+        if (lockingProperties.getMode() == LockingProperties.Mode.PESSIMISTIC) {
+            return transactionTemplate.execute(status -> applyUpdate(userId, userBookRequest));
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> applyUpdate(userId, userBookRequest));
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= lockingProperties.getMaxAttempts()) {
+                    throw e;
+                }
+                log.debug("Concurrent update of user {}, attempt {} failed: {}", userId, attempt, e.getMessage());
+                backOff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Random pause, so that the conflicting writers don't collide again on the retry.
+     */
+    private void backOff(int attempt) {
+        long bound = lockingProperties.getRetryBackoff().toNanos() * attempt;
+        if (bound <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(bound));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted before retrying update", e);
+        }
+    }
+
+    private UserBookResponse applyUpdate(Long userId, UserBookRequest userBookRequest) {
+        UserDto currentUser = lockingProperties.getMode() == LockingProperties.Mode.PESSIMISTIC
+                ? userService.getUserByIdForUpdate(userId)
+                : userService.getUserById(userId);
+        UserDto userDto = userMapper.userRequestToUserDto(userBookRequest.getUserRequest());
+        userDto.setId(userId);
+        userDto.setVersion(currentUser.getVersion());
+
+        List<BookDto> storedBooks = bookService.getBooksByUserId(userId);
+        Map<Long, BookDto> currentBooks = new HashMap<>();
+        for (BookDto bookDto : storedBooks) {
+            currentBooks.put(bookDto.getId(), bookDto);
+        }
+        List<BookDto> bookDtos = userBookRequest.getBookRequests() == null
+                ? storedBooks
+                : userBookRequest.getBookRequests()
+                .stream()
+                .filter(Objects::nonNull)
+                .map(bookMapper::bookRequestToBookDto)
+                .peek(bookDto -> bookDto.setUserId(userId))
+                .toList();
+        booksPerRequestSummary.record(bookDtos.size());
+
+        List<BookDto> newBooks = new ArrayList<>();
+        List<BookDto> changedBooks = new ArrayList<>();
+        for (BookDto bookDto : bookDtos) {
+            if (bookDto.getId() == null) {
+                newBooks.add(bookDto);
+                continue;
+            }
+            BookDto currentBook = currentBooks.remove(bookDto.getId());
+            if (currentBook == null) {
+                throw new NotFoundException("Book with id " + bookDto.getId() + " not found");
+            }
+            bookDto.setVersion(currentBook.getVersion());
+            if (!bookDto.equals(currentBook)) {
+                changedBooks.add(bookDto);
+            }
+        }
+        List<BookDto> removedBooks = List.copyOf(currentBooks.values());
+
+        if (!userDto.equals(currentUser)) {
+            userService.updateUser(userDto);
+            log.debug("Updated user: {}", userDto);
+        } else if (!removedBooks.isEmpty() || !changedBooks.isEmpty() || !newBooks.isEmpty()) {
+            // the user version guards the book list as a whole, the book versions only
+            // the rows written: concurrent updates of different books conflict here
+            userService.incrementVersion(userId, currentUser.getVersion());
+        }
+
+        if (!removedBooks.isEmpty()) {
+            bookService.deleteBooks(removedBooks);
+        }
+        if (!changedBooks.isEmpty()) {
+            bookService.updateBooks(changedBooks);
+        }
+        long[] createdBookIds = newBooks.isEmpty() ? new long[0] : bookService.createBooks(newBooks);
+        log.info("Updated user {}: {} books inserted, {} updated, {} deleted",
+                userId, newBooks.size(), changedBooks.size(), removedBooks.size());
+
+        long[] bookIdList = new long[bookDtos.size()];
+        int created = 0;
+        for (int i = 0; i < bookIdList.length; i++) {
+            Long id = bookDtos.get(i).getId();
+            bookIdList[i] = id != null ? id : createdBookIds[created++];
+        }
+        return UserBookResponse.builder()
+                .userId(userId)
+                .booksIdList(bookIdList)
+                .build();
     }
 
+    @Cacheable(cacheNames = USER_BOOKS_CACHE, key = "#userId")
     public UserBookResponse getUserWithBooks(Long userId) {
-        return null;
+        userExistenceFilter.check(userId);
+        long[] bookIdList;
+        try {
+            bookIdList = bookService.getBookIdsByUserId(userId);
+        } catch (NotFoundException e) {
+            userExistenceFilter.falsePositive(userId);
+            throw e;
+        }
+        log.debug("Found {} book ids for user {}", bookIdList.length, userId);
+
+        return UserBookResponse.builder()
+                .userId(userId)
+                .booksIdList(bookIdList)
+                .build();
+    }
+
+    /**
+     * Book count, page count and authors of the user from the book stats, without reading
+     * the books; the in-memory backend keeps no stats and summarizes the books instead.
+     */
+    public UserBookSummaryResponse getUserBookSummary(Long userId) {
+        userExistenceFilter.check(userId);
+        UserBookSummaryDto summary;
+        try {
+            if (userBookStats.isActive()) {
+                summary = userBookStats.getSummary(userId);
+            } else {
+                userService.getUserById(userId);
+                summary = UserBookStats.summarize(userId, bookService.getBooksByUserId(userId));
+            }
+        } catch (NotFoundException e) {
+            userExistenceFilter.falsePositive(userId);
+            throw e;
+        }
+        log.debug("Found book summary of user {}: {}", userId, summary);
+
+        return UserBookSummaryResponse.builder()
+                .userId(summary.getUserId())
+                .bookCount(summary.getBookCount())
+                .pageCount(summary.getPageCount())
+                .authors(summary.getAuthors())
+                .build();
+    }
+
+    /**
+     * Keyset page of users with their books: users with ids greater than {@code afterId},
+     * at most {@code limit} of them, so any page costs the same index range scan.
+     */
+    public UserPageResponse getUsersWithBooks(long afterId, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<UserDto> users = userService.getUsers(afterId, pageSize);
+        Map<Long, List<BookResponse>> booksByUserId = new HashMap<>();
+        for (BookDto bookDto : bookService.getBooksByUserIds(users.stream().map(UserDto::getId).toList())) {
+            booksByUserId.computeIfAbsent(bookDto.getUserId(), id -> new ArrayList<>())
+                    .add(bookMapper.bookDtoToBookResponse(bookDto));
+        }
+        List<UserResponse> userResponses = new ArrayList<>(users.size());
+        for (UserDto userDto : users) {
+            UserResponse userResponse = userMapper.userDtoToUserResponse(userDto);
+            userResponse.setBooks(booksByUserId.getOrDefault(userDto.getId(), List.of()));
+            userResponses.add(userResponse);
+        }
+        log.debug("Found {} users after {}", users.size(), afterId);
+
+        return UserPageResponse.builder()
+                .users(userResponses)
+                .nextAfterId(users.size() == pageSize ? users.get(pageSize - 1).getId() : null)
+                .build();
     }
 
+    /**
+     * Deletes the user with books in one statement, or only marks the user deleted
+     * in the soft delete mode ({@code app.delete.mode}).
+     */
+    @Transactional
+    @CacheEvict(cacheNames = USER_BOOKS_CACHE, key = "#userId")
     public void deleteUserWithBooks(Long userId) {
+        userExistenceFilter.check(userId);
+        try {
+            userService.deleteUserById(userId);
+        } catch (NotFoundException e) {
+            userExistenceFilter.falsePositive(userId);
+            throw e;
+        }
     }
 }
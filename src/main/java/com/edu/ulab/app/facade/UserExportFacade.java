@@ -0,0 +1,125 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.ExportProperties;
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.web.response.BookResponse;
+import com.edu.ulab.app.web.response.UserResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Export of all users with their books as NDJSON, one {@link UserResponse} per line in id order.
+ * <p>
+ * Users and books are streamed by the read backend, both in user id order, and merged on
+ * the user id, so the export holds one user at a time and neither sorts nor skips rows
+ * with OFFSET. The database backends read them by two forward-only cursors in one
+ * repeatable read transaction; the in-memory backend needs no transaction.
+ */
+@Slf4j
+@Component
+@Timed(value = MetricsConfig.FACADE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
+public class UserExportFacade {
+    private final UserService userService;
+    private final BookService bookService;
+    private final UserMapper userMapper;
+    private final BookMapper bookMapper;
+    private final JsonFactory jsonFactory;
+    private final ObjectWriter userWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final ExportProperties exportProperties;
+    private final boolean inMemory;
+
+    public UserExportFacade(UserService userService,
+                            BookService bookService,
+                            UserMapper userMapper,
+                            BookMapper bookMapper,
+                            ObjectMapper objectMapper,
+                            PlatformTransactionManager transactionManager,
+                            ExportProperties exportProperties,
+                            BackendProperties backendProperties) {
+        this.userService = userService;
+        this.bookService = bookService;
+        this.userMapper = userMapper;
+        this.bookMapper = bookMapper;
+        this.jsonFactory = objectMapper.getFactory();
+        this.userWriter = objectMapper.writerFor(UserResponse.class);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.exportProperties = exportProperties;
+        this.inMemory = backendProperties.getRead() == BackendProperties.Backend.IN_MEMORY;
+    }
+
+    public void exportUsersWithBooks(OutputStream out) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            long exported;
+            if (inMemory) {
+                exported = mergeUsersWithBooks(generator);
+            } else {
+                Long count = transactionTemplate.execute(status -> mergeUsersWithBooks(generator));
+                exported = count == null ? 0 : count;
+            }
+            log.info("Exported {} users", exported);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long mergeUsersWithBooks(JsonGenerator generator) {
+        int fetchSize = exportProperties.getFetchSize();
+        long count = 0;
+        try (Stream<UserDto> users = userService.streamUsers(fetchSize);
+             Stream<BookDto> books = bookService.streamBooks(fetchSize)) {
+            Iterator<BookDto> bookIterator = books.iterator();
+            BookDto book = bookIterator.hasNext() ? bookIterator.next() : null;
+            for (Iterator<UserDto> userIterator = users.iterator(); userIterator.hasNext(); ) {
+                UserResponse user = userMapper.userDtoToUserResponse(userIterator.next());
+                List<BookResponse> userBooks = new ArrayList<>();
+                // books of soft deleted users have no user to join
+                while (book != null && book.getUserId() <= user.getId()) {
+                    if (book.getUserId().equals(user.getId())) {
+                        userBooks.add(bookMapper.bookDtoToBookResponse(book));
+                    }
+                    book = bookIterator.hasNext() ? bookIterator.next() : null;
+                }
+                user.setBooks(userBooks);
+                writeUser(generator, user);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void writeUser(JsonGenerator generator, UserResponse user) {
+        try {
+            userWriter.writeValue(generator, user);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.ImportProperties;
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.BaseWebResponse;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Bulk import of NDJSON {@link UserBookRequest} records.
+ * <p>
+ * Records are read one by one and written in chunks of {@code app.import.chunk-size}
+ * with the batch methods of the services, one transaction per chunk, so neither the
+ * upload nor the results are ever held in memory as a whole. For every record one NDJSON
+ * result line is written in input order: a {@link UserBookResponse}, or a
+ * {@link BaseWebResponse} if the record was rejected or its chunk rolled back.
+ * A malformed record ends the import.
+ * <p>
+ * The in-memory backend has no transactions: the users of a failed chunk are created one
+ * by one and deleted again, their books go with them.
+ */
+@Slf4j
+@Component
+@Timed(value = MetricsConfig.FACADE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
+public class UserImportFacade {
+    private final UserService userService;
+    private final BookService bookService;
+    private final UserMapper userMapper;
+    private final BookMapper bookMapper;
+    private final ObjectReader requestReader;
+    private final ObjectWriter responseWriter;
+    private final ObjectWriter errorWriter;
+    private final JsonFactory jsonFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final ImportProperties importProperties;
+    private final boolean inMemory;
+
+    public UserImportFacade(UserService userService,
+                            BookService bookService,
+                            UserMapper userMapper,
+                            BookMapper bookMapper,
+                            ObjectMapper objectMapper,
+                            TransactionTemplate transactionTemplate,
+                            ImportProperties importProperties,
+                            BackendProperties backendProperties) {
+        this.userService = userService;
+        this.bookService = bookService;
+        this.userMapper = userMapper;
+        this.bookMapper = bookMapper;
+        this.requestReader = objectMapper.readerFor(UserBookRequest.class);
+        this.responseWriter = objectMapper.writerFor(UserBookResponse.class);
+        this.errorWriter = objectMapper.writerFor(BaseWebResponse.class);
+        this.jsonFactory = objectMapper.getFactory();
+        this.transactionTemplate = transactionTemplate;
+        this.importProperties = importProperties;
+        this.inMemory = backendProperties.getWrite() == BackendProperties.Backend.IN_MEMORY;
+    }
+
+    public void importUsersWithBooks(InputStream in, OutputStream out) throws IOException {
+        int chunkSize = importProperties.getChunkSize();
+        List<UserBookRequest> chunk = new ArrayList<>(chunkSize);
+        long records = 0;
+        long imported = 0;
+        try (MappingIterator<UserBookRequest> requests = requestReader.readValues(in);
+             JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            while (true) {
+                try {
+                    if (!requests.hasNextValue()) {
+                        break;
+                    }
+                    chunk.add(requests.nextValue());
+                } catch (JsonProcessingException e) {
+                    imported += importChunk(chunk, generator);
+                    writeResult(generator, new BaseWebResponse("Malformed record " + (records + 1)
+                            + ": " + e.getOriginalMessage()));
+                    log.warn("Import stopped at malformed record {}: {}", records + 1, e.getOriginalMessage());
+                    return;
+                }
+                records++;
+                if (chunk.size() == chunkSize) {
+                    imported += importChunk(chunk, generator);
+                    chunk.clear();
+                }
+            }
+            imported += importChunk(chunk, generator);
+        } finally {
+            log.info("Imported {} of {} user records", imported, records);
+        }
+    }
+
+    /**
+     * @return number of imported users
+     */
+    private int importChunk(List<UserBookRequest> chunk, JsonGenerator generator) throws IOException {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        Object[] results = new Object[chunk.size()];
+        List<Integer> valid = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (chunk.get(i) == null || chunk.get(i).getUserRequest() == null) {
+                results[i] = new BaseWebResponse("User is missing");
+            } else {
+                valid.add(i);
+            }
+        }
+        int imported = 0;
+        if (!valid.isEmpty()) {
+            try {
+                List<UserBookRequest> requests = valid.stream().map(chunk::get).toList();
+                List<UserBookResponse> responses = inMemory
+                        ? createUsersWithBooksInMemory(requests)
+                        : transactionTemplate.execute(status -> createUsersWithBooks(requests, null));
+                for (int i = 0; i < valid.size(); i++) {
+                    results[valid.get(i)] = Objects.requireNonNull(responses).get(i);
+                }
+                imported = valid.size();
+            } catch (RuntimeException e) {
+                log.warn("Import chunk of {} records rolled back: {}", valid.size(), e.getMessage());
+                BaseWebResponse error = new BaseWebResponse(e.getMessage());
+                valid.forEach(i -> results[i] = error);
+            }
+        }
+        for (Object result : results) {
+            writeResult(generator, result);
+        }
+        generator.flush();
+        return imported;
+    }
+
+    private List<UserBookResponse> createUsersWithBooksInMemory(List<UserBookRequest> requests) {
+        List<Long> createdUserIds = new ArrayList<>(requests.size());
+        try {
+            return createUsersWithBooks(requests, createdUserIds);
+        } catch (RuntimeException e) {
+            for (Long userId : createdUserIds) {
+                try {
+                    userService.deleteUserById(userId);
+                } catch (RuntimeException deleteFailure) {
+                    log.error("Can't delete user {} of a failed import chunk", userId, deleteFailure);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param createdUserIds receives the id of each user as soon as it is created, the users
+     *                       are then created one by one; {@code null} for a single batch
+     */
+    private List<UserBookResponse> createUsersWithBooks(List<UserBookRequest> requests, List<Long> createdUserIds) {
+        List<UserDto> userDtos = requests.stream()
+                .map(request -> userMapper.userRequestToUserDto(request.getUserRequest()))
+                .toList();
+        List<UserDto> users;
+        if (createdUserIds == null) {
+            users = userService.createUsers(userDtos);
+        } else {
+            users = new ArrayList<>(userDtos.size());
+            for (UserDto userDto : userDtos) {
+                UserDto user = userService.createUser(userDto);
+                createdUserIds.add(user.getId());
+                users.add(user);
+            }
+        }
+
+        List<BookDto> books = new ArrayList<>();
+        int[] bookCounts = new int[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            List<BookRequest> bookRequests = requests.get(i).getBookRequests();
+            if (bookRequests == null) {
+                continue;
+            }
+            for (BookRequest bookRequest : bookRequests) {
+                if (bookRequest != null) {
+                    BookDto bookDto = bookMapper.bookRequestToBookDto(bookRequest);
+                    bookDto.setId(null);
+                    bookDto.setUserId(users.get(i).getId());
+                    books.add(bookDto);
+                    bookCounts[i]++;
+                }
+            }
+        }
+        long[] bookIds = books.isEmpty() ? new long[0] : bookService.createBooks(books);
+        log.debug("Imported {} users with {} books", users.size(), bookIds.length);
+
+        List<UserBookResponse> responses = new ArrayList<>(requests.size());
+        int offset = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            responses.add(UserBookResponse.builder()
+                    .userId(users.get(i).getId())
+                    .booksIdList(Arrays.copyOfRange(bookIds, offset, offset + bookCounts[i]))
+                    .build());
+            offset += bookCounts[i];
+        }
+        return responses;
+    }
+
+    private void writeResult(JsonGenerator generator, Object result) throws IOException {
+        (result instanceof UserBookResponse ? responseWriter : errorWriter).writeValue(generator, result);
+        generator.writeRaw('\n');
+    }
+}
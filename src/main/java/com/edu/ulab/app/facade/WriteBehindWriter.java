@@ -0,0 +1,377 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.cache.UserBookStats;
+import com.edu.ulab.app.cache.UserExistenceFilter;
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.config.WriteBehindProperties;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.storage.SegmentLog;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind creation of users with books ({@code app.write-behind.enabled}).
+ * <p>
+ * A request gets its user and book ids from the database sequences up front, is
+ * appended to a local journal and answered right away. One background thread takes the
+ * accepted requests in arrival order and writes them in batches of up to
+ * {@code batch-size} rows per transaction, waiting at most {@code max-delay} for a batch
+ * to fill. Accepted but unwritten rows are bounded by {@code capacity}; when it is used
+ * up a request waits for room and is rejected after {@code offer-timeout}.
+ * <p>
+ * Written requests are marked in the journal, the journal is cleared whenever all of its
+ * requests are written, and unmarked ones are written again on startup. The inserts skip
+ * rows that already exist, so a request written twice is stored once. A user is visible
+ * to reads and updates only once written. If a batch fails its requests are written one
+ * by one; a request failing on its own is dropped: it is logged in full and marked failed
+ * in the journal, so it isn't written again on every start.
+ */
+@Slf4j
+@Component
+public class WriteBehindWriter {
+    private static final byte ACCEPTED = 1;
+    private static final byte WRITTEN = 2;
+    private static final byte FAILED = 3;
+
+    private static final String INSERT_USER_SQL = "INSERT INTO PERSON(ID, FULL_NAME, TITLE, AGE) " +
+            "SELECT ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM PERSON WHERE ID = ?)";
+    private static final String INSERT_BOOK_SQL = "INSERT INTO BOOK(ID, TITLE, AUTHOR, PAGE_COUNT, USER_ID) " +
+            "SELECT ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM BOOK WHERE ID = ?)";
+
+    private final WriteBehindProperties properties;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UserExistenceFilter userExistenceFilter;
+    private final UserBookStats userBookStats;
+    private final ObjectReader requestReader;
+    private final ObjectWriter requestWriter;
+
+    private PooledSequence userIds;
+    private PooledSequence bookIds;
+    private SegmentLog journal;
+    private Semaphore capacity;
+    private Counter rejected;
+    private final BlockingQueue<QueuedRequest> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger unwritten = new AtomicInteger();
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public WriteBehindWriter(WriteBehindProperties properties,
+                             BackendProperties backendProperties,
+                             JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             UserExistenceFilter userExistenceFilter,
+                             UserBookStats userBookStats,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.userExistenceFilter = userExistenceFilter;
+        this.userBookStats = userBookStats;
+        this.requestReader = objectMapper.readerFor(AcceptedRequest.class);
+        this.requestWriter = objectMapper.writerFor(AcceptedRequest.class);
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (backendProperties.getWrite() == BackendProperties.Backend.IN_MEMORY) {
+            throw new IllegalStateException("Write-behind needs a database write backend");
+        }
+        this.userIds = new PooledSequence(jdbcTemplate, "PERSON_SEQ", 50, 10_000);
+        this.bookIds = new PooledSequence(jdbcTemplate, "BOOK_SEQ", 50, 10_000);
+        this.capacity = new Semaphore(properties.getCapacity(), true);
+        Gauge.builder(MetricsConfig.WRITE_BEHIND_PENDING, this.capacity,
+                        permits -> properties.getCapacity() - permits.availablePermits())
+                .description("Rows accepted by write-behind and not yet written")
+                .baseUnit("rows")
+                .register(meterRegistry);
+        this.rejected = Counter.builder(MetricsConfig.WRITE_BEHIND_REJECTED)
+                .description("Requests rejected after waiting for write-behind capacity")
+                .register(meterRegistry);
+
+        this.journal = new SegmentLog(Path.of(properties.getJournalDirectory()),
+                properties.getJournalSegmentSize(), properties.isFsync());
+        recover();
+        this.running = true;
+        this.writerThread = new CustomizableThreadFactory("write-behind-").newThread(this::run);
+        this.writerThread.start();
+    }
+
+    /**
+     * Lets the writer drain the queue for up to 30 seconds, then interrupts it. The journal
+     * is closed only once the writer stopped, a writer still marking requests keeps it open.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        if (writerThread.isAlive()) {
+            log.warn("Write-behind writer didn't stop, the journal is left open");
+            return;
+        }
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * @param bookDtos books without ids and user ids
+     */
+    public UserBookResponse createUserWithBooks(UserDto userDto, List<BookDto> bookDtos) {
+        int permits = Math.min(1 + bookDtos.size(), properties.getCapacity());
+        acquire(permits);
+        try {
+            long userId = userIds.next(1)[0];
+            long[] bookIdList = bookIds.next(bookDtos.size());
+            userDto.setId(userId);
+            for (int i = 0; i < bookIdList.length; i++) {
+                bookDtos.get(i).setId(bookIdList[i]);
+                bookDtos.get(i).setUserId(userId);
+            }
+            AcceptedRequest request = new AcceptedRequest(userDto, bookDtos);
+            ByteBuffer payload = ByteBuffer.wrap(serialize(request));
+            unwritten.incrementAndGet();
+            try {
+                journal.append(ACCEPTED, userId, payload);
+            } catch (RuntimeException e) {
+                unwritten.decrementAndGet();
+                throw e;
+            }
+            queue.add(new QueuedRequest(request, permits));
+            userExistenceFilter.add(userId);
+            log.debug("Accepted user {} with {} books for write-behind", userId, bookIdList.length);
+            return UserBookResponse.builder()
+                    .userId(userId)
+                    .booksIdList(bookIdList)
+                    .build();
+        } catch (RuntimeException e) {
+            capacity.release(permits);
+            throw e;
+        }
+    }
+
+    private byte[] serialize(AcceptedRequest request) {
+        try {
+            return requestWriter.writeValueAsBytes(request);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Can't journal user " + request.user().getId(), e);
+        }
+    }
+
+    private void acquire(int permits) {
+        boolean acquired;
+        try {
+            acquired = capacity.tryAcquire(permits, properties.getOfferTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new TaskRejectedException("Too many users waiting to be written");
+        }
+    }
+
+    private void recover() {
+        Map<Long, Long> accepted = new LinkedHashMap<>();
+        journal.recover((type, id, position) -> {
+            if (type == ACCEPTED) {
+                accepted.put(id, position);
+            } else if (type == WRITTEN || type == FAILED) {
+                ByteBuffer settled = journal.payload(position);
+                while (settled.hasRemaining()) {
+                    accepted.remove(settled.getLong());
+                }
+            } else {
+                throw new IllegalStateException("Unknown write-behind journal record type " + type);
+            }
+        });
+        for (long position : accepted.values()) {
+            try {
+                AcceptedRequest request = requestReader.readValue(new ByteBufferBackedInputStream(journal.payload(position)));
+                // recovered requests are written first and take no capacity
+                queue.add(new QueuedRequest(request, 0));
+                userExistenceFilter.add(request.user().getId());
+                unwritten.incrementAndGet();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read write-behind journal record at " + position, e);
+            }
+        }
+        if (accepted.isEmpty()) {
+            journal.clearIf(() -> true);
+        } else {
+            log.info("Recovered {} unwritten users from the write-behind journal", accepted.size());
+        }
+    }
+
+    private void run() {
+        long maxDelayNanos = properties.getMaxDelay().toNanos();
+        List<QueuedRequest> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedRequest first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int rows = first.rows();
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (rows < properties.getBatchSize()) {
+                    QueuedRequest next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    rows += next.rows();
+                }
+            } catch (InterruptedException e) {
+                // the batch stays in the journal
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        log.info("Write-behind stopped, {} users left in the journal", unwritten.get());
+    }
+
+    private void write(List<QueuedRequest> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(batch));
+            settle(WRITTEN, batch);
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Write-behind batch of {} users failed, writing them one by one: {}",
+                    batch.size(), e.getMessage());
+        }
+        for (QueuedRequest queued : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(List.of(queued)));
+                settle(WRITTEN, List.of(queued));
+            } catch (RuntimeException e) {
+                log.error("Write-behind of user {} failed, the request is dropped: {}",
+                        queued.request().user().getId(),
+                        new String(serialize(queued.request()), StandardCharsets.UTF_8), e);
+                settle(FAILED, List.of(queued));
+            }
+        }
+    }
+
+    private void insert(List<QueuedRequest> batch) {
+        List<UserDto> users = new ArrayList<>(batch.size());
+        List<BookDto> books = new ArrayList<>();
+        for (QueuedRequest queued : batch) {
+            users.add(queued.request().user());
+            books.addAll(queued.request().books());
+        }
+        int[][] userCounts = jdbcTemplate.batchUpdate(INSERT_USER_SQL, users, users.size(), (ps, userDto) -> {
+            ps.setLong(1, userDto.getId());
+            ps.setString(2, userDto.getFullName());
+            ps.setString(3, userDto.getTitle());
+            ps.setInt(4, userDto.getAge());
+            ps.setLong(5, userDto.getId());
+        });
+        inserted(users, userCounts).forEach(userDto -> userBookStats.addUser(userDto.getId()));
+        if (!books.isEmpty()) {
+            int[][] bookCounts = jdbcTemplate.batchUpdate(INSERT_BOOK_SQL, books, books.size(), (ps, bookDto) -> {
+                ps.setLong(1, bookDto.getId());
+                ps.setString(2, bookDto.getTitle());
+                ps.setString(3, bookDto.getAuthor());
+                ps.setObject(4, bookDto.getPageCount(), Types.INTEGER);
+                ps.setLong(5, bookDto.getUserId());
+                ps.setLong(6, bookDto.getId());
+            });
+            userBookStats.addBooks(inserted(books, bookCounts));
+        }
+        log.debug("Wrote {} users with {} books", users.size(), books.size());
+    }
+
+    /**
+     * Rows a repeated write didn't skip, the book stats count each row once.
+     */
+    private static <T> List<T> inserted(List<T> rows, int[][] insertCounts) {
+        List<T> inserted = new ArrayList<>(rows.size());
+        int index = 0;
+        for (int[] counts : insertCounts) {
+            for (int count : counts) {
+                if (count != 0) {
+                    inserted.add(rows.get(index));
+                }
+                index++;
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Marks written or failed requests, which are not written again.
+     */
+    private void settle(byte type, List<QueuedRequest> batch) {
+        ByteBuffer userIdList = ByteBuffer.allocate(batch.size() * Long.BYTES);
+        int permits = 0;
+        for (QueuedRequest queued : batch) {
+            userIdList.putLong(queued.request().user().getId());
+            permits += queued.permits();
+        }
+        journal.append(type, batch.get(0).request().user().getId(), userIdList.flip());
+        capacity.release(permits);
+        if (unwritten.addAndGet(-batch.size()) == 0) {
+            journal.clearIf(() -> unwritten.get() == 0);
+        }
+    }
+
+    /**
+     * Journal record of an accepted request, with all ids assigned.
+     */
+    record AcceptedRequest(UserDto user, List<BookDto> books) {
+    }
+
+    private record QueuedRequest(AcceptedRequest request, int permits) {
+        int rows() {
+            return 1 + request.books().size();
+        }
+    }
+}
@@ -3,17 +3,31 @@ package com.edu.ulab.app.mapper;
 import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.entity.Book;
 import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.response.BookResponse;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
+
+import java.util.List;
 
 @Mapper(componentModel = "spring")
 public interface BookMapper {
 
+    @Mapping(target = "version", ignore = true)
     BookDto bookRequestToBookDto(BookRequest bookRequest);
 
     BookRequest bookDtoToBookRequest(BookDto bookDto);
 
+    BookResponse bookDtoToBookResponse(BookDto bookDto);
+
     Book bookDtoToBook(BookDto bookDto);
 
     BookDto bookToBookDto(Book book);
+
+    @Mapping(target = "version", ignore = true)
+    void updateBook(BookDto bookDto, @MappingTarget Book book);
+
+    List<Book> bookDtosToBooks(List<BookDto> bookDtos);
+
+    List<BookDto> booksToBookDtos(Iterable<Book> books);
 }
@@ -3,15 +3,33 @@ package com.edu.ulab.app.mapper;
 import com.edu.ulab.app.dto.UserDto;
 import com.edu.ulab.app.entity.Person;
 import com.edu.ulab.app.web.request.UserRequest;
+import com.edu.ulab.app.web.response.UserResponse;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
+
+import java.util.List;
 
 @Mapper(componentModel = "spring")
 public interface UserMapper {
+    @Mapping(target = "version", ignore = true)
     UserDto userRequestToUserDto(UserRequest userRequest);
 
     UserRequest userDtoToUserRequest(UserDto userDto);
 
+    @Mapping(target = "deleted", ignore = true)
     Person userDtoToPerson(UserDto userDto);
 
     UserDto personToUserDto(Person person);
+
+    List<Person> userDtosToPersons(List<UserDto> userDtos);
+
+    List<UserDto> personsToUserDtos(Iterable<Person> persons);
+
+    @Mapping(target = "books", ignore = true)
+    UserResponse userDtoToUserResponse(UserDto userDto);
+
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "deleted", ignore = true)
+    void updatePerson(UserDto userDto, @MappingTarget Person person);
 }
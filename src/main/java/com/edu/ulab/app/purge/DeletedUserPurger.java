@@ -0,0 +1,67 @@
+package com.edu.ulab.app.purge;
+
+import com.edu.ulab.app.config.DeleteProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Physically deletes users marked deleted in the soft delete mode. Books go first,
+ * a chunk per transaction, so a huge library never holds locks for long.
+ * <p>
+ * The soft delete queues the user in PERSON_PURGE in the transaction marking it, so a
+ * purge reads that small table instead of scanning PERSON for deleted rows, and an idle
+ * purge finds it empty. The entry leaves the queue in the transaction deleting the user.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.delete", name = "mode", havingValue = "soft")
+public class DeletedUserPurger {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public DeletedUserPurger(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             TaskScheduler taskScheduler,
+                             DeleteProperties deleteProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = deleteProperties.getPurgeChunkSize();
+        Duration interval = deleteProperties.getPurgeInterval();
+        taskScheduler.scheduleWithFixedDelay(this::purge, Instant.now().plus(interval), interval);
+    }
+
+    public void purge() {
+        final String SELECT_SQL = "SELECT PERSON_ID FROM PERSON_PURGE ORDER BY PERSON_ID FETCH FIRST ? ROWS ONLY";
+        List<Long> userIds;
+        do {
+            userIds = jdbcTemplate.queryForList(SELECT_SQL, Long.class, chunkSize);
+            userIds.forEach(this::purgeUser);
+        } while (userIds.size() == chunkSize);
+    }
+
+    private void purgeUser(Long userId) {
+        final String DELETE_BOOKS_SQL = "DELETE FROM BOOK WHERE USER_ID = ? FETCH FIRST ? ROWS ONLY";
+        final String DELETE_USER_SQL = "DELETE FROM PERSON WHERE ID = ? AND DELETED = TRUE";
+        final String DELETE_PURGE_SQL = "DELETE FROM PERSON_PURGE WHERE PERSON_ID = ?";
+        long books = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> jdbcTemplate.update(DELETE_BOOKS_SQL, userId, chunkSize));
+            books += deleted;
+        } while (deleted == chunkSize);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(DELETE_USER_SQL, userId);
+            jdbcTemplate.update(DELETE_PURGE_SQL, userId);
+        });
+        log.info("Purged deleted user {} with {} books", userId, books);
+    }
+}
@@ -6,6 +6,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
 import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface BookRepository extends CrudRepository<Book, Long> {
@@ -13,4 +15,11 @@ public interface BookRepository extends CrudRepository<Book, Long> {
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select b from Book b where b.id = :id")
     Optional<Book> findByIdForUpdate(long id);
+
+    @Query("select b.id from Person p left join Book b on b.userId = p.id where p.id = :userId order by b.id")
+    List<Long> findAllIdsByUserId(long userId);
+
+    List<Book> findAllByUserIdOrderById(Long userId);
+
+    List<Book> findAllByUserIdInOrderByUserIdAscIdAsc(Collection<Long> userIds);
 }
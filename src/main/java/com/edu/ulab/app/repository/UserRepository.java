@@ -1,11 +1,15 @@
 package com.edu.ulab.app.repository;
 
 import com.edu.ulab.app.entity.Person;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.LockModeType;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends CrudRepository<Person, Long> {
@@ -16,7 +20,33 @@ public interface UserRepository extends CrudRepository<Person, Long> {
     User has books - book - finished
      */
 
+    List<Person> findByIdGreaterThanOrderById(long afterId, Pageable pageable);
+
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select p from Person p where p.id = :id")
     Optional<Person> findByIdForUpdate(long id);
+
+    /**
+     * Books are deleted by the ON DELETE CASCADE foreign key.
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Person p where p.id = :id")
+    int deleteUserById(long id);
+
+    @Modifying
+    @Transactional
+    @Query("update Person p set p.version = p.version + 1 " +
+            "where p.id = :id and p.version = :version and p.deleted = false")
+    int incrementVersion(long id, long version);
+
+    @Modifying
+    @Transactional
+    @Query("update Person p set p.deleted = true, p.version = p.version + 1 where p.id = :id and p.deleted = false")
+    int markDeleted(long id);
+
+    @Modifying
+    @Transactional
+    @Query(value = "insert into PERSON_PURGE(PERSON_ID) values (:id)", nativeQuery = true)
+    int queuePurge(long id);
 }
@@ -3,12 +3,42 @@ package com.edu.ulab.app.service;
 
 import com.edu.ulab.app.dto.BookDto;
 
+import java.util.List;
+import java.util.stream.Stream;
+
 public interface BookService {
     BookDto createBook(BookDto bookDto);
 
+    /**
+     * @return ids of the created books in the order of {@code bookDtos}
+     */
+    long[] createBooks(List<BookDto> bookDtos);
+
     BookDto updateBook(BookDto bookDto);
 
+    /**
+     * Updates books within their users, a book of another user is not found.
+     */
+    List<BookDto> updateBooks(List<BookDto> bookDtos);
+
     BookDto getBookById(Long id);
 
+    long[] getBookIdsByUserId(Long userId);
+
+    List<BookDto> getBooksByUserId(Long userId);
+
+    /**
+     * Books of the users ordered by user id and id.
+     */
+    List<BookDto> getBooksByUserIds(List<Long> userIds);
+
+    /**
+     * All books ordered by user id and id, fetched {@code fetchSize} at a time. The stream
+     * has to be closed; the database backends read it by a cursor of the current transaction.
+     */
+    Stream<BookDto> streamBooks(int fetchSize);
+
     void deleteBookById(Long id);
+
+    void deleteBooks(List<BookDto> bookDtos);
 }
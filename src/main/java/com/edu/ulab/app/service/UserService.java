@@ -3,13 +3,40 @@ package com.edu.ulab.app.service;
 import com.edu.ulab.app.dto.UserDto;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
 public interface UserService {
     UserDto createUser(UserDto userDto);
 
+    List<UserDto> createUsers(List<UserDto> userDtos);
+
     UserDto updateUser(UserDto userDto);
 
+    /**
+     * Increments the version of the unchanged user if it still has {@code version}, so
+     * a concurrent writer of the user's books fails its version check.
+     */
+    void incrementVersion(Long id, Long version);
+
     UserDto getUserById(Long id);
 
+    /**
+     * Users with ids greater than {@code afterId}, at most {@code limit} of them, in id order.
+     */
+    List<UserDto> getUsers(long afterId, int limit);
+
+    /**
+     * All users in id order, fetched {@code fetchSize} at a time. The stream has to be
+     * closed; the database backends read it by a cursor of the current transaction.
+     */
+    Stream<UserDto> streamUsers(int fetchSize);
+
+    /**
+     * Reads the user and locks it until the end of the current transaction.
+     */
+    UserDto getUserByIdForUpdate(Long id);
+
     void deleteUserById(Long id);
 }
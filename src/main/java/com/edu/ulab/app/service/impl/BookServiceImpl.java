@@ -1,50 +1,206 @@
 package com.edu.ulab.app.service.impl;
 
+import com.edu.ulab.app.cache.UserBookStats;
+import com.edu.ulab.app.cache.UserBooksCache;
+import com.edu.ulab.app.config.MetricsConfig;
 import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.BookMapper;
 import com.edu.ulab.app.repository.BookRepository;
 import com.edu.ulab.app.service.BookService;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
 public class BookServiceImpl implements BookService {
 
     private final BookRepository bookRepository;
 
     private final BookMapper bookMapper;
 
+    private final UserBooksCache userBooksCache;
+
+    private final UserBookStats userBookStats;
+
+    private final EntityManager entityManager;
+
     public BookServiceImpl(BookRepository bookRepository,
-                           BookMapper bookMapper) {
+                           BookMapper bookMapper,
+                           UserBooksCache userBooksCache,
+                           UserBookStats userBookStats,
+                           EntityManager entityManager) {
         this.bookRepository = bookRepository;
         this.bookMapper = bookMapper;
+        this.userBooksCache = userBooksCache;
+        this.userBookStats = userBookStats;
+        this.entityManager = entityManager;
     }
 
     @Override
     public BookDto createBook(BookDto bookDto) {
         Book book = bookMapper.bookDtoToBook(bookDto);
-        log.info("Mapped book: {}", book);
+        log.debug("Mapped book: {}", book);
         Book savedBook = bookRepository.save(book);
-        log.info("Saved book: {}", savedBook);
-        return bookMapper.bookToBookDto(savedBook);
+        log.debug("Saved book: {}", savedBook);
+        userBooksCache.evict(savedBook.getUserId());
+        BookDto savedBookDto = bookMapper.bookToBookDto(savedBook);
+        userBookStats.addBook(savedBookDto);
+        return savedBookDto;
+    }
+
+    @Override
+    public long[] createBooks(List<BookDto> bookDtos) {
+        List<Book> books = bookMapper.bookDtosToBooks(bookDtos);
+        log.debug("Mapped books: {}", books);
+        bookRepository.saveAll(books);
+        log.debug("Saved books: {}", books);
+        userBooksCache.evictAll(bookDtos);
+        userBookStats.addBooks(bookDtos);
+        return books.stream()
+                .mapToLong(Book::getId)
+                .toArray();
     }
 
     @Override
     public BookDto updateBook(BookDto bookDto) {
-        // реализовать недстающие методы
-        return null;
+        Book book = findBook(bookDto.getId());
+        checkVersion(book, bookDto.getVersion());
+        BookDto previousBookDto = bookMapper.bookToBookDto(book);
+        bookMapper.updateBook(bookDto, book);
+        Book updatedBook = bookRepository.save(book);
+        log.debug("Updated book: {}", updatedBook);
+        userBooksCache.evict(previousBookDto.getUserId());
+        userBooksCache.evict(updatedBook.getUserId());
+        BookDto updatedBookDto = bookMapper.bookToBookDto(updatedBook);
+        userBookStats.removeBook(previousBookDto);
+        userBookStats.addBook(updatedBookDto);
+        return updatedBookDto;
     }
 
+    /**
+     * Books already loaded in the current transaction are taken from the persistence
+     * context, the updates are flushed as one JDBC batch with version checks.
+     */
     @Override
+    public List<BookDto> updateBooks(List<BookDto> bookDtos) {
+        List<Book> books = new ArrayList<>(bookDtos.size());
+        List<BookDto> previousBookDtos = new ArrayList<>(bookDtos.size());
+        for (BookDto bookDto : bookDtos) {
+            Book book = findBook(bookDto.getId());
+            if (!book.getUserId().equals(bookDto.getUserId())) {
+                throw new NotFoundException("Book with id " + bookDto.getId() + " not found");
+            }
+            checkVersion(book, bookDto.getVersion());
+            previousBookDtos.add(bookMapper.bookToBookDto(book));
+            bookMapper.updateBook(bookDto, book);
+            books.add(book);
+        }
+        Iterable<Book> updatedBooks = bookRepository.saveAll(books);
+        log.debug("Updated books: {}", updatedBooks);
+        userBooksCache.evictAll(bookDtos);
+        List<BookDto> updatedBookDtos = bookMapper.booksToBookDtos(updatedBooks);
+        userBookStats.removeBooks(previousBookDtos);
+        userBookStats.addBooks(updatedBookDtos);
+        return updatedBookDtos;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public BookDto getBookById(Long id) {
-        // реализовать недстающие методы
-        return null;
+        Book book = findBook(id);
+        log.debug("Found book: {}", book);
+        return bookMapper.bookToBookDto(book);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long[] getBookIdsByUserId(Long userId) {
+        List<Long> bookIds = bookRepository.findAllIdsByUserId(userId);
+        if (bookIds.isEmpty()) {
+            throw new NotFoundException("User with id " + userId + " not found");
+        }
+        return bookIds.stream()
+                .filter(Objects::nonNull)
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookDto> getBooksByUserId(Long userId) {
+        return bookMapper.booksToBookDtos(bookRepository.findAllByUserIdOrderById(userId));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookDto> getBooksByUserIds(List<Long> userIds) {
+        return bookMapper.booksToBookDtos(bookRepository.findAllByUserIdInOrderByUserIdAscIdAsc(userIds));
+    }
+
+    /**
+     * Streamed books are detached, so they don't pile up in the persistence context.
+     */
+    @Override
+    public Stream<BookDto> streamBooks(int fetchSize) {
+        final String SELECT_JPQL = "select b from Book b order by b.userId, b.id";
+        return entityManager.createQuery(SELECT_JPQL, Book.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()
+                .map(book -> {
+                    entityManager.detach(book);
+                    return bookMapper.bookToBookDto(book);
+                });
     }
 
     @Override
     public void deleteBookById(Long id) {
-        // реализовать недстающие методы
+        Book book = findBook(id);
+        bookRepository.delete(book);
+        log.debug("Deleted book: {}", book);
+        userBooksCache.evict(book.getUserId());
+        userBookStats.removeBook(bookMapper.bookToBookDto(book));
+    }
+
+    @Override
+    public void deleteBooks(List<BookDto> bookDtos) {
+        List<Book> books = new ArrayList<>(bookDtos.size());
+        for (BookDto bookDto : bookDtos) {
+            Book book = findBook(bookDto.getId());
+            checkVersion(book, bookDto.getVersion());
+            books.add(book);
+        }
+        bookRepository.deleteAll(books);
+        log.debug("Deleted books: {}", books);
+        userBooksCache.evictAll(bookDtos);
+        userBookStats.removeBooks(bookMapper.booksToBookDtos(books));
+    }
+
+    /**
+     * Hibernate checks the version loaded into the persistence context, so a stale
+     * version of the caller is compared here.
+     */
+    private static void checkVersion(Book book, Long version) {
+        if (version != null && !version.equals(book.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Book.class, book.getId());
+        }
+    }
+
+    private Book findBook(Long id) {
+        return bookRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("Book with id " + id + " not found"));
     }
 }
@@ -0,0 +1,100 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.BackendProperties.Backend;
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.service.BookService;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Sends reads and writes to the backends chosen by {@code app.backend.read}
+ * and {@code app.backend.write}.
+ */
+@Slf4j
+@Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
+@Primary
+public class BookServiceImplRouting implements BookService {
+
+    private final BookService readService;
+    private final BookService writeService;
+
+    public BookServiceImplRouting(BackendProperties backendProperties,
+                                  BookServiceImpl bookServiceImpl,
+                                  BookServiceImplTemplate bookServiceImplTemplate,
+                                  BookServiceImplStorage bookServiceImplStorage) {
+        backendProperties.checkConsistency();
+        Map<Backend, BookService> backends = new EnumMap<>(Backend.class);
+        backends.put(Backend.JPA, bookServiceImpl);
+        backends.put(Backend.JDBC, bookServiceImplTemplate);
+        backends.put(Backend.IN_MEMORY, bookServiceImplStorage);
+        this.readService = backends.get(backendProperties.getRead());
+        this.writeService = backends.get(backendProperties.getWrite());
+        log.info("Book service backends: read {}, write {}",
+                backendProperties.getRead(), backendProperties.getWrite());
+    }
+
+    @Override
+    public BookDto createBook(BookDto bookDto) {
+        return writeService.createBook(bookDto);
+    }
+
+    @Override
+    public long[] createBooks(List<BookDto> bookDtos) {
+        return writeService.createBooks(bookDtos);
+    }
+
+    @Override
+    public BookDto updateBook(BookDto bookDto) {
+        return writeService.updateBook(bookDto);
+    }
+
+    @Override
+    public List<BookDto> updateBooks(List<BookDto> bookDtos) {
+        return writeService.updateBooks(bookDtos);
+    }
+
+    @Override
+    public BookDto getBookById(Long id) {
+        return readService.getBookById(id);
+    }
+
+    @Override
+    public long[] getBookIdsByUserId(Long userId) {
+        return readService.getBookIdsByUserId(userId);
+    }
+
+    @Override
+    public List<BookDto> getBooksByUserId(Long userId) {
+        return readService.getBooksByUserId(userId);
+    }
+
+    @Override
+    public List<BookDto> getBooksByUserIds(List<Long> userIds) {
+        return readService.getBooksByUserIds(userIds);
+    }
+
+    @Override
+    public Stream<BookDto> streamBooks(int fetchSize) {
+        return readService.streamBooks(fetchSize);
+    }
+
+    @Override
+    public void deleteBookById(Long id) {
+        writeService.deleteBookById(id);
+    }
+
+    @Override
+    public void deleteBooks(List<BookDto> bookDtos) {
+        writeService.deleteBooks(bookDtos);
+    }
+}
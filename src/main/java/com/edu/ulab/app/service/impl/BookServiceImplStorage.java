@@ -0,0 +1,156 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.cache.UserBooksCache;
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.storage.Storage;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
+public class BookServiceImplStorage implements BookService {
+
+    private final Storage storage;
+
+    private final BookMapper bookMapper;
+
+    private final UserBooksCache userBooksCache;
+
+    public BookServiceImplStorage(Storage storage,
+                                  BookMapper bookMapper,
+                                  UserBooksCache userBooksCache) {
+        this.storage = storage;
+        this.bookMapper = bookMapper;
+        this.userBooksCache = userBooksCache;
+    }
+
+    @Override
+    public BookDto createBook(BookDto bookDto) {
+        Book book = bookMapper.bookDtoToBook(bookDto);
+        log.debug("Mapped book: {}", book);
+        Book savedBook = storage.createBook(book);
+        log.debug("Saved book: {}", savedBook);
+        userBooksCache.evict(savedBook.getUserId());
+        return bookMapper.bookToBookDto(savedBook);
+    }
+
+    @Override
+    public long[] createBooks(List<BookDto> bookDtos) {
+        List<Book> books = bookMapper.bookDtosToBooks(bookDtos);
+        log.debug("Mapped books: {}", books);
+        long[] bookIds = storage.createBooks(books);
+        log.debug("Saved books: {}", books);
+        userBooksCache.evictAll(bookDtos);
+        return bookIds;
+    }
+
+    @Override
+    public BookDto updateBook(BookDto bookDto) {
+        Book book = bookMapper.bookDtoToBook(bookDto);
+        log.debug("Mapped book: {}", book);
+        Long previousUserId = storage.findBook(book.getId())
+                .map(Book::getUserId)
+                .orElse(null);
+        Book updatedBook = storage.updateBook(book);
+        log.debug("Updated book: {}", updatedBook);
+        userBooksCache.evict(previousUserId);
+        userBooksCache.evict(updatedBook.getUserId());
+        return bookMapper.bookToBookDto(updatedBook);
+    }
+
+    @Override
+    public List<BookDto> updateBooks(List<BookDto> bookDtos) {
+        List<Book> books = bookMapper.bookDtosToBooks(bookDtos);
+        log.debug("Mapped books: {}", books);
+        for (Book book : books) {
+            Book current = storage.findBook(book.getId())
+                    .filter(existing -> existing.getUserId().equals(book.getUserId()))
+                    .orElseThrow(() -> new NotFoundException("Book with id " + book.getId() + " not found"));
+            log.debug("Update book: {}", current);
+            storage.updateBook(book);
+        }
+        userBooksCache.evictAll(bookDtos);
+        return bookMapper.booksToBookDtos(books);
+    }
+
+    @Override
+    public BookDto getBookById(Long id) {
+        Book book = storage.findBook(id)
+                .orElseThrow(() -> new NotFoundException("Book with id " + id + " not found"));
+        log.debug("Found book: {}", book);
+        return bookMapper.bookToBookDto(book);
+    }
+
+    @Override
+    public long[] getBookIdsByUserId(Long userId) {
+        return storage.findBookIdsByUserId(userId);
+    }
+
+    @Override
+    public List<BookDto> getBooksByUserId(Long userId) {
+        return Arrays.stream(storage.findBookIdsByUserId(userId))
+                .mapToObj(storage::findBook)
+                .flatMap(Optional::stream)
+                .map(bookMapper::bookToBookDto)
+                .toList();
+    }
+
+    /**
+     * A user deleted meanwhile has no books.
+     */
+    @Override
+    public List<BookDto> getBooksByUserIds(List<Long> userIds) {
+        return userIds.stream()
+                .sorted()
+                .flatMapToLong(userId -> Arrays.stream(storage.findBookIdsByUserIdIfPresent(userId)))
+                .mapToObj(storage::findBook)
+                .flatMap(Optional::stream)
+                .map(bookMapper::bookToBookDto)
+                .toList();
+    }
+
+    /**
+     * Books of the users in user order, a user's book ids sorted.
+     */
+    @Override
+    public Stream<BookDto> streamBooks(int fetchSize) {
+        return storage.streamUsers(fetchSize)
+                .flatMapToLong(user -> Arrays.stream(storage.findBookIdsByUserIdIfPresent(user.getId())).sorted())
+                .mapToObj(storage::findBook)
+                .flatMap(Optional::stream)
+                .map(bookMapper::bookToBookDto);
+    }
+
+    @Override
+    public void deleteBookById(Long id) {
+        Book book = storage.findBook(id)
+                .orElseThrow(() -> new NotFoundException("Book with id " + id + " not found"));
+        if (storage.deleteBook(id)) {
+            log.debug("Deleted book: {}", book);
+            userBooksCache.evict(book.getUserId());
+        }
+    }
+
+    @Override
+    public void deleteBooks(List<BookDto> bookDtos) {
+        for (BookDto bookDto : bookDtos) {
+            if (!storage.deleteBook(bookDto.getId())) {
+                throw new NotFoundException("Book with id " + bookDto.getId() + " not found");
+            }
+        }
+        log.debug("Deleted books: {}", bookDtos);
+        userBooksCache.evictAll(bookDtos);
+    }
+}
@@ -1,65 +1,360 @@
 package com.edu.ulab.app.service.impl;
 
+import com.edu.ulab.app.cache.UserBookStats;
+import com.edu.ulab.app.cache.UserBooksCache;
+import com.edu.ulab.app.config.MetricsConfig;
 import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.service.BookService;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+/**
+ * Book service on plain JDBC statements.
+ * <p>
+ * While the book stats are kept, updates and deletes read the rows they replace, without
+ * locking, and are checked against the versions read: a row changed in between fails
+ * the write as a concurrent modification, so the stats remove exactly the values
+ * overwritten.
+ */
 @Slf4j
 @Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
 public class BookServiceImplTemplate implements BookService {
+    private static final String INSERT_SQL = "INSERT INTO BOOK(TITLE, AUTHOR, PAGE_COUNT, USER_ID) VALUES (?,?,?,?)";
+    private static final String[] GENERATED_KEY_COLUMNS = {"id"};
+    private static final String UPDATE_SQL = "UPDATE BOOK SET TITLE = ?, AUTHOR = ?, PAGE_COUNT = ?, USER_ID = ?, " +
+            "VERSION = VERSION + 1 WHERE ID = ? AND VERSION = COALESCE(?, VERSION)";
+    private static final String UPDATE_OWNED_SQL = "UPDATE BOOK SET TITLE = ?, AUTHOR = ?, PAGE_COUNT = ?, " +
+            "VERSION = VERSION + 1 WHERE ID = ? AND USER_ID = ? AND VERSION = COALESCE(?, VERSION)";
+    private static final String SELECT_BY_ID_SQL = "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT, VERSION " +
+            "FROM BOOK WHERE ID = ?";
+    private static final String SELECT_IDS_BY_USER_ID_SQL = "SELECT B.ID FROM PERSON P " +
+            "LEFT JOIN BOOK B ON B.USER_ID = P.ID WHERE P.ID = ? AND P.DELETED = FALSE ORDER BY B.ID";
+    private static final String SELECT_BY_USER_ID_SQL = "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT, VERSION " +
+            "FROM BOOK WHERE USER_ID = ? ORDER BY ID";
+    private static final String SELECT_ALL_SQL = "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT, VERSION " +
+            "FROM BOOK ORDER BY USER_ID, ID";
+    private static final String DELETE_VERSIONED_SQL = "DELETE FROM BOOK WHERE ID = ? AND VERSION = COALESCE(?, VERSION)";
+
+    /**
+     * Parameter types and generated key columns of the insert are declared once, a call
+     * only binds its values.
+     */
+    private static final PreparedStatementCreatorFactory INSERT_FACTORY = insertFactory();
+
+    /**
+     * Maps the columns of the book selects by index, in the order of their select list.
+     */
+    private static final RowMapper<BookDto> BOOK_ROW_MAPPER = BookServiceImplTemplate::mapBook;
 
     private final JdbcTemplate jdbcTemplate;
 
-    public BookServiceImplTemplate(JdbcTemplate jdbcTemplate) {
+    private final UserBooksCache userBooksCache;
+
+    private final UserBookStats userBookStats;
+
+    public BookServiceImplTemplate(JdbcTemplate jdbcTemplate,
+                                   UserBooksCache userBooksCache,
+                                   UserBookStats userBookStats) {
         this.jdbcTemplate = jdbcTemplate;
+        this.userBooksCache = userBooksCache;
+        this.userBookStats = userBookStats;
     }
 
     @Override
     public BookDto createBook(BookDto bookDto) {
-        final String INSERT_SQL = "INSERT INTO BOOK(TITLE, AUTHOR, PAGE_COUNT, USER_ID) VALUES (?,?,?,?)";
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(
-                new PreparedStatementCreator() {
-                    public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
-                        PreparedStatement ps =
-                                connection.prepareStatement(INSERT_SQL, new String[]{"id"});
+                INSERT_FACTORY.newPreparedStatementCreator(new Object[]{
+                        bookDto.getTitle(), bookDto.getAuthor(), bookDto.getPageCount(), bookDto.getUserId()}),
+                keyHolder);
+
+        bookDto.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        bookDto.setVersion(0L);
+        userBooksCache.evict(bookDto.getUserId());
+        userBookStats.addBook(bookDto);
+        return bookDto;
+    }
+
+    @Override
+    public long[] createBooks(List<BookDto> bookDtos) {
+        if (bookDtos.isEmpty()) {
+            return new long[0];
+        }
+        return jdbcTemplate.execute(
+                connection -> connection.prepareStatement(INSERT_SQL, GENERATED_KEY_COLUMNS),
+                (PreparedStatementCallback<long[]>) ps -> {
+                    for (BookDto bookDto : bookDtos) {
                         ps.setString(1, bookDto.getTitle());
                         ps.setString(2, bookDto.getAuthor());
                         ps.setLong(3, bookDto.getPageCount());
                         ps.setLong(4, bookDto.getUserId());
-                        return ps;
+                        ps.addBatch();
                     }
-                },
-                keyHolder);
+                    ps.executeBatch();
 
-        bookDto.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
-        return bookDto;
+                    long[] bookIds = new long[bookDtos.size()];
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        for (int i = 0; i < bookIds.length; i++) {
+                            if (!keys.next()) {
+                                throw new DataRetrievalFailureException(
+                                        "Generated key is missing for book: " + bookDtos.get(i).getTitle());
+                            }
+                            bookIds[i] = keys.getLong(1);
+                        }
+                    }
+                    userBooksCache.evictAll(bookDtos);
+                    userBookStats.addBooks(bookDtos);
+                    return bookIds;
+                });
     }
 
     @Override
     public BookDto updateBook(BookDto bookDto) {
-        // реализовать недстающие методы
-        return null;
+        BookDto previousBookDto = getBookById(bookDto.getId());
+        if (userBookStats.isActive()) {
+            checkVersion(bookDto, previousBookDto);
+        }
+        Long version = userBookStats.isActive() ? previousBookDto.getVersion() : bookDto.getVersion();
+        int updated = jdbcTemplate.update(UPDATE_SQL, ps -> {
+            ps.setString(1, bookDto.getTitle());
+            ps.setString(2, bookDto.getAuthor());
+            ps.setLong(3, bookDto.getPageCount());
+            ps.setLong(4, bookDto.getUserId());
+            ps.setLong(5, bookDto.getId());
+            ps.setObject(6, version, Types.BIGINT);
+        });
+        checkAffected(List.of(bookDto), new int[][]{{updated}}, book -> version);
+        incrementVersion(bookDto);
+        userBooksCache.evict(previousBookDto.getUserId());
+        userBooksCache.evict(bookDto.getUserId());
+        userBookStats.removeBook(previousBookDto);
+        userBookStats.addBook(bookDto);
+        return bookDto;
     }
 
     @Override
+    public List<BookDto> updateBooks(List<BookDto> bookDtos) {
+        Map<Long, BookDto> previousBookDtos = getPreviousBooks(bookDtos);
+        Function<BookDto, Long> version = bookDto -> expectedVersion(bookDto, previousBookDtos.get(bookDto.getId()));
+        int[][] updateCounts = jdbcTemplate.batchUpdate(UPDATE_OWNED_SQL, bookDtos, bookDtos.size(), (ps, bookDto) -> {
+            ps.setString(1, bookDto.getTitle());
+            ps.setString(2, bookDto.getAuthor());
+            ps.setLong(3, bookDto.getPageCount());
+            ps.setLong(4, bookDto.getId());
+            ps.setLong(5, bookDto.getUserId());
+            ps.setObject(6, version.apply(bookDto), Types.BIGINT);
+        });
+        checkAffected(bookDtos, updateCounts, version);
+        bookDtos.forEach(BookServiceImplTemplate::incrementVersion);
+        userBooksCache.evictAll(bookDtos);
+        userBookStats.removeBooks(previousBookDtos.values());
+        userBookStats.addBooks(bookDtos);
+        return bookDtos;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public BookDto getBookById(Long id) {
-        // реализовать недстающие методы
-        return null;
+        return jdbcTemplate.query(SELECT_BY_ID_SQL, BOOK_ROW_MAPPER, id)
+                .stream()
+                .findFirst()
+                .orElseThrow(() -> new NotFoundException("Book with id " + id + " not found"));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long[] getBookIdsByUserId(Long userId) {
+        long[] bookIds = jdbcTemplate.query(SELECT_IDS_BY_USER_ID_SQL, BookServiceImplTemplate::extractIds, userId);
+        if (bookIds == null) {
+            throw new NotFoundException("User with id " + userId + " not found");
+        }
+        return bookIds;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookDto> getBooksByUserId(Long userId) {
+        return jdbcTemplate.query(SELECT_BY_USER_ID_SQL, BOOK_ROW_MAPPER, userId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookDto> getBooksByUserIds(List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return List.of();
+        }
+        final String SELECT_SQL = "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT, VERSION FROM BOOK " +
+                "WHERE USER_ID IN (" + String.join(",", Collections.nCopies(userIds.size(), "?")) + ") " +
+                "ORDER BY USER_ID, ID";
+        return jdbcTemplate.query(SELECT_SQL, BOOK_ROW_MAPPER, userIds.toArray());
+    }
+
+    @Override
+    public Stream<BookDto> streamBooks(int fetchSize) {
+        return jdbcTemplate.queryForStream(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_ALL_SQL);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, BOOK_ROW_MAPPER);
     }
 
     @Override
     public void deleteBookById(Long id) {
-        // реализовать недстающие методы
+        BookDto bookDto = getBookById(id);
+        Long version = userBookStats.isActive() ? bookDto.getVersion() : null;
+        int deleted = jdbcTemplate.update(DELETE_VERSIONED_SQL, id, version);
+        checkAffected(List.of(bookDto), new int[][]{{deleted}}, book -> version);
+        userBooksCache.evict(bookDto.getUserId());
+        userBookStats.removeBook(bookDto);
+    }
+
+    @Override
+    public void deleteBooks(List<BookDto> bookDtos) {
+        Map<Long, BookDto> previousBookDtos = getPreviousBooks(bookDtos);
+        Function<BookDto, Long> version = bookDto -> expectedVersion(bookDto, previousBookDtos.get(bookDto.getId()));
+        int[][] deleteCounts = jdbcTemplate.batchUpdate(DELETE_VERSIONED_SQL, bookDtos, bookDtos.size(), (ps, bookDto) -> {
+            ps.setLong(1, bookDto.getId());
+            ps.setObject(2, version.apply(bookDto), Types.BIGINT);
+        });
+        checkAffected(bookDtos, deleteCounts, version);
+        userBooksCache.evictAll(bookDtos);
+        userBookStats.removeBooks(previousBookDtos.values());
+    }
+
+    /**
+     * Rows of the books by id as they are now, read only while the book stats are kept;
+     * books of other users than given are left out and not found by the write.
+     *
+     * @throws OptimisticLockingFailureException if a book has another version than given
+     */
+    private Map<Long, BookDto> getPreviousBooks(List<BookDto> bookDtos) {
+        if (!userBookStats.isActive() || bookDtos.isEmpty()) {
+            return Map.of();
+        }
+        final String SELECT_SQL = "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT, VERSION FROM BOOK " +
+                "WHERE ID IN (" + String.join(",", Collections.nCopies(bookDtos.size(), "?")) + ")";
+        Map<Long, BookDto> previousBookDtos = new HashMap<>();
+        for (BookDto previousBookDto : jdbcTemplate.query(SELECT_SQL, BOOK_ROW_MAPPER,
+                bookDtos.stream().map(BookDto::getId).toArray())) {
+            previousBookDtos.put(previousBookDto.getId(), previousBookDto);
+        }
+        for (BookDto bookDto : bookDtos) {
+            BookDto previousBookDto = previousBookDtos.get(bookDto.getId());
+            if (previousBookDto == null) {
+                continue;
+            }
+            if (bookDto.getUserId() != null && !bookDto.getUserId().equals(previousBookDto.getUserId())) {
+                previousBookDtos.remove(bookDto.getId());
+            } else {
+                checkVersion(bookDto, previousBookDto);
+            }
+        }
+        return previousBookDtos;
+    }
+
+    /**
+     * Version a write of the book is checked against: the one of the row read for the
+     * book stats, else the caller's, else none.
+     */
+    private static Long expectedVersion(BookDto bookDto, BookDto previousBookDto) {
+        return previousBookDto != null ? previousBookDto.getVersion() : bookDto.getVersion();
+    }
+
+    private static void checkVersion(BookDto bookDto, BookDto previousBookDto) {
+        if (bookDto.getVersion() != null && !bookDto.getVersion().equals(previousBookDto.getVersion())) {
+            throw new OptimisticLockingFailureException("Book with id " + bookDto.getId() + " was modified concurrently");
+        }
+    }
+
+    /**
+     * @return ids of the rows without nulls, {@code null} if there are no rows
+     */
+    private static long[] extractIds(ResultSet rs) throws SQLException {
+        if (!rs.next()) {
+            return null;
+        }
+        long[] ids = new long[16];
+        int count = 0;
+        do {
+            long id = rs.getLong(1);
+            if (!rs.wasNull()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = id;
+            }
+        } while (rs.next());
+        return Arrays.copyOf(ids, count);
+    }
+
+    private static BookDto mapBook(ResultSet rs, int rowNum) throws SQLException {
+        BookDto bookDto = new BookDto();
+        bookDto.setId(rs.getLong(1));
+        bookDto.setUserId(rs.getLong(2));
+        bookDto.setTitle(rs.getString(3));
+        bookDto.setAuthor(rs.getString(4));
+        bookDto.setPageCount(rs.getLong(5));
+        bookDto.setVersion(rs.getLong(6));
+        return bookDto;
+    }
+
+    private static PreparedStatementCreatorFactory insertFactory() {
+        PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(
+                INSERT_SQL, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.BIGINT);
+        factory.setGeneratedKeysColumnNames(GENERATED_KEY_COLUMNS);
+        return factory;
+    }
+
+    private static void incrementVersion(BookDto bookDto) {
+        if (bookDto.getVersion() != null) {
+            bookDto.setVersion(bookDto.getVersion() + 1);
+        }
+    }
+
+    /**
+     * Batch update counts are split into chunks of the batch size; a zero count means
+     * the book row wasn't there or, for a write checked against a version, had another one.
+     */
+    private static void checkAffected(List<BookDto> bookDtos, int[][] affectedCounts,
+                                      Function<BookDto, Long> expectedVersion) {
+        int index = 0;
+        for (int[] counts : affectedCounts) {
+            for (int count : counts) {
+                if (count == 0) {
+                    BookDto bookDto = bookDtos.get(index);
+                    if (expectedVersion.apply(bookDto) != null) {
+                        throw new OptimisticLockingFailureException(
+                                "Book with id " + bookDto.getId() + " was modified concurrently");
+                    }
+                    throw new NotFoundException("Book with id " + bookDto.getId() + " not found");
+                }
+                index++;
+            }
+        }
     }
 }
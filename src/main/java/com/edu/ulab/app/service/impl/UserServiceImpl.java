@@ -1,49 +1,160 @@
 package com.edu.ulab.app.service.impl;
 
+import com.edu.ulab.app.cache.UserBookStats;
+import com.edu.ulab.app.cache.UserBooksCache;
+import com.edu.ulab.app.cache.UserExistenceFilter;
+import com.edu.ulab.app.config.DeleteProperties;
+import com.edu.ulab.app.config.MetricsConfig;
 import com.edu.ulab.app.dto.UserDto;
 import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.UserMapper;
 import com.edu.ulab.app.repository.UserRepository;
 import com.edu.ulab.app.service.UserService;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
 public class UserServiceImpl implements UserService {
 
     private final UserRepository userRepository;
     private final UserMapper userMapper;
+    private final UserBooksCache userBooksCache;
+    private final UserExistenceFilter userExistenceFilter;
+    private final UserBookStats userBookStats;
+    private final DeleteProperties deleteProperties;
+    private final EntityManager entityManager;
 
     public UserServiceImpl(UserRepository userRepository,
-                           UserMapper userMapper) {
+                           UserMapper userMapper,
+                           UserBooksCache userBooksCache,
+                           UserExistenceFilter userExistenceFilter,
+                           UserBookStats userBookStats,
+                           DeleteProperties deleteProperties,
+                           EntityManager entityManager) {
         this.userRepository = userRepository;
         this.userMapper = userMapper;
+        this.userBooksCache = userBooksCache;
+        this.userExistenceFilter = userExistenceFilter;
+        this.userBookStats = userBookStats;
+        this.deleteProperties = deleteProperties;
+        this.entityManager = entityManager;
     }
 
     @Override
     public UserDto createUser(UserDto userDto) {
         Person user = userMapper.userDtoToPerson(userDto);
-        log.info("Mapped user: {}", user);
+        log.debug("Mapped user: {}", user);
         Person savedUser = userRepository.save(user);
-        log.info("Saved user: {}", savedUser);
+        log.debug("Saved user: {}", savedUser);
+        userExistenceFilter.add(savedUser.getId());
+        userBookStats.addUser(savedUser.getId());
         return userMapper.personToUserDto(savedUser);
     }
 
+    @Override
+    public List<UserDto> createUsers(List<UserDto> userDtos) {
+        List<Person> users = userMapper.userDtosToPersons(userDtos);
+        log.debug("Mapped users: {}", users);
+        Iterable<Person> savedUsers = userRepository.saveAll(users);
+        log.debug("Saved users: {}", savedUsers);
+        savedUsers.forEach(savedUser -> {
+            userExistenceFilter.add(savedUser.getId());
+            userBookStats.addUser(savedUser.getId());
+        });
+        return userMapper.personsToUserDtos(savedUsers);
+    }
+
     @Override
     public UserDto updateUser(UserDto userDto) {
-        // реализовать недстающие методы
-        return null;
+        Person user = findUser(userDto.getId());
+        if (userDto.getVersion() != null && !userDto.getVersion().equals(user.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Person.class, user.getId());
+        }
+        userMapper.updatePerson(userDto, user);
+        Person updatedUser = userRepository.save(user);
+        log.debug("Updated user: {}", updatedUser);
+        return userMapper.personToUserDto(updatedUser);
     }
 
+    /**
+     * A bulk update, the user loaded into the persistence context keeps its version.
+     */
     @Override
+    public void incrementVersion(Long id, Long version) {
+        if (userRepository.incrementVersion(id, version) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Person.class, id);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public UserDto getUserById(Long id) {
-        // реализовать недстающие методы
-        return null;
+        Person user = findUser(id);
+        log.debug("Found user: {}", user);
+        return userMapper.personToUserDto(user);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UserDto> getUsers(long afterId, int limit) {
+        return userMapper.personsToUserDtos(
+                userRepository.findByIdGreaterThanOrderById(afterId, PageRequest.ofSize(limit)));
+    }
+
+    /**
+     * Streamed users are detached, so they don't pile up in the persistence context.
+     */
+    @Override
+    public Stream<UserDto> streamUsers(int fetchSize) {
+        final String SELECT_JPQL = "select p from Person p order by p.id";
+        return entityManager.createQuery(SELECT_JPQL, Person.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()
+                .map(user -> {
+                    entityManager.detach(user);
+                    return userMapper.personToUserDto(user);
+                });
+    }
+
+    @Override
+    public UserDto getUserByIdForUpdate(Long id) {
+        Person user = userRepository.findByIdForUpdate(id)
+                .orElseThrow(() -> new NotFoundException("User with id " + id + " not found"));
+        log.debug("Locked user: {}", user);
+        return userMapper.personToUserDto(user);
     }
 
     @Override
     public void deleteUserById(Long id) {
-        // реализовать недстающие методы
+        boolean soft = deleteProperties.getMode() == DeleteProperties.Mode.SOFT;
+        int deleted = soft ? userRepository.markDeleted(id) : userRepository.deleteUserById(id);
+        if (deleted == 0) {
+            throw new NotFoundException("User with id " + id + " not found");
+        }
+        if (soft) {
+            userRepository.queuePurge(id);
+        }
+        log.debug("Deleted user: {}", id);
+        userBooksCache.evict(id);
+        userExistenceFilter.remove(id);
+        userBookStats.removeUser(id);
+    }
+
+    private Person findUser(Long id) {
+        return userRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("User with id " + id + " not found"));
     }
 }
@@ -0,0 +1,90 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.BackendProperties.Backend;
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.service.UserService;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Sends reads and writes to the backends chosen by {@code app.backend.read}
+ * and {@code app.backend.write}.
+ */
+@Slf4j
+@Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
+@Primary
+public class UserServiceImplRouting implements UserService {
+
+    private final UserService readService;
+    private final UserService writeService;
+
+    public UserServiceImplRouting(BackendProperties backendProperties,
+                                  UserServiceImpl userServiceImpl,
+                                  UserServiceImplTemplate userServiceImplTemplate,
+                                  UserServiceImplStorage userServiceImplStorage) {
+        backendProperties.checkConsistency();
+        Map<Backend, UserService> backends = new EnumMap<>(Backend.class);
+        backends.put(Backend.JPA, userServiceImpl);
+        backends.put(Backend.JDBC, userServiceImplTemplate);
+        backends.put(Backend.IN_MEMORY, userServiceImplStorage);
+        this.readService = backends.get(backendProperties.getRead());
+        this.writeService = backends.get(backendProperties.getWrite());
+        log.info("User service backends: read {}, write {}",
+                backendProperties.getRead(), backendProperties.getWrite());
+    }
+
+    @Override
+    public UserDto createUser(UserDto userDto) {
+        return writeService.createUser(userDto);
+    }
+
+    @Override
+    public List<UserDto> createUsers(List<UserDto> userDtos) {
+        return writeService.createUsers(userDtos);
+    }
+
+    @Override
+    public UserDto updateUser(UserDto userDto) {
+        return writeService.updateUser(userDto);
+    }
+
+    @Override
+    public void incrementVersion(Long id, Long version) {
+        writeService.incrementVersion(id, version);
+    }
+
+    @Override
+    public UserDto getUserById(Long id) {
+        return readService.getUserById(id);
+    }
+
+    @Override
+    public List<UserDto> getUsers(long afterId, int limit) {
+        return readService.getUsers(afterId, limit);
+    }
+
+    @Override
+    public Stream<UserDto> streamUsers(int fetchSize) {
+        return readService.streamUsers(fetchSize);
+    }
+
+    @Override
+    public UserDto getUserByIdForUpdate(Long id) {
+        return writeService.getUserByIdForUpdate(id);
+    }
+
+    @Override
+    public void deleteUserById(Long id) {
+        writeService.deleteUserById(id);
+    }
+}
@@ -0,0 +1,107 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.cache.UserBooksCache;
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.storage.Storage;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
+public class UserServiceImplStorage implements UserService {
+
+    private final Storage storage;
+    private final UserMapper userMapper;
+    private final UserBooksCache userBooksCache;
+
+    public UserServiceImplStorage(Storage storage,
+                                  UserMapper userMapper,
+                                  UserBooksCache userBooksCache) {
+        this.storage = storage;
+        this.userMapper = userMapper;
+        this.userBooksCache = userBooksCache;
+    }
+
+    @Override
+    public UserDto createUser(UserDto userDto) {
+        Person user = userMapper.userDtoToPerson(userDto);
+        log.debug("Mapped user: {}", user);
+        Person savedUser = storage.createUser(user);
+        log.debug("Saved user: {}", savedUser);
+        return userMapper.personToUserDto(savedUser);
+    }
+
+    @Override
+    public List<UserDto> createUsers(List<UserDto> userDtos) {
+        List<Person> users = userMapper.userDtosToPersons(userDtos);
+        log.debug("Mapped users: {}", users);
+        users.forEach(storage::createUser);
+        log.debug("Saved users: {}", users);
+        return userMapper.personsToUserDtos(users);
+    }
+
+    @Override
+    public UserDto updateUser(UserDto userDto) {
+        Person user = userMapper.userDtoToPerson(userDto);
+        log.debug("Mapped user: {}", user);
+        Person updatedUser = storage.updateUser(user);
+        log.debug("Updated user: {}", updatedUser);
+        return userMapper.personToUserDto(updatedUser);
+    }
+
+    /**
+     * The stored user is rewritten with the same fields, the storage increments its version.
+     */
+    @Override
+    public void incrementVersion(Long id, Long version) {
+        Person user = userMapper.userDtoToPerson(getUserById(id));
+        user.setVersion(version);
+        storage.updateUser(user);
+    }
+
+    @Override
+    public UserDto getUserById(Long id) {
+        Person user = storage.findUser(id)
+                .orElseThrow(() -> new NotFoundException("User with id " + id + " not found"));
+        log.debug("Found user: {}", user);
+        return userMapper.personToUserDto(user);
+    }
+
+    @Override
+    public List<UserDto> getUsers(long afterId, int limit) {
+        return userMapper.personsToUserDtos(storage.findUsers(afterId, limit));
+    }
+
+    @Override
+    public Stream<UserDto> streamUsers(int fetchSize) {
+        return storage.streamUsers(fetchSize)
+                .map(userMapper::personToUserDto);
+    }
+
+    /**
+     * The storage has no row locks, each of its writes is atomic on its own.
+     */
+    @Override
+    public UserDto getUserByIdForUpdate(Long id) {
+        return getUserById(id);
+    }
+
+    @Override
+    public void deleteUserById(Long id) {
+        if (!storage.deleteUser(id)) {
+            throw new NotFoundException("User with id " + id + " not found");
+        }
+        log.debug("Deleted user: {}", id);
+        userBooksCache.evict(id);
+    }
+}
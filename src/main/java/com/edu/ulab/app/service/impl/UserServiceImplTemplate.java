@@ -1,60 +1,224 @@
 package com.edu.ulab.app.service.impl;
 
+import com.edu.ulab.app.cache.UserBookStats;
+import com.edu.ulab.app.cache.UserBooksCache;
+import com.edu.ulab.app.cache.UserExistenceFilter;
+import com.edu.ulab.app.config.DeleteProperties;
+import com.edu.ulab.app.config.MetricsConfig;
 import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.service.UserService;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, percentiles = {0.5, 0.95, 0.99}, histogram = true)
 public class UserServiceImplTemplate implements UserService {
+    private static final String INSERT_SQL = "INSERT INTO PERSON(FULL_NAME, TITLE, AGE) VALUES (?,?,?)";
+    private static final String[] GENERATED_KEY_COLUMNS = {"id"};
+    private static final String UPDATE_SQL = "UPDATE PERSON SET FULL_NAME = ?, TITLE = ?, AGE = ?, " +
+            "VERSION = VERSION + 1 WHERE ID = ? AND VERSION = COALESCE(?, VERSION) AND DELETED = FALSE";
+    private static final String INCREMENT_VERSION_SQL = "UPDATE PERSON SET VERSION = VERSION + 1 " +
+            "WHERE ID = ? AND VERSION = ? AND DELETED = FALSE";
+    private static final String SELECT_BY_ID_SQL = "SELECT ID, FULL_NAME, TITLE, AGE, VERSION FROM PERSON " +
+            "WHERE ID = ? AND DELETED = FALSE";
+    private static final String SELECT_PAGE_SQL = "SELECT ID, FULL_NAME, TITLE, AGE, VERSION FROM PERSON " +
+            "WHERE ID > ? AND DELETED = FALSE ORDER BY ID FETCH FIRST ? ROWS ONLY";
+    private static final String SELECT_ALL_SQL = "SELECT ID, FULL_NAME, TITLE, AGE, VERSION FROM PERSON " +
+            "WHERE DELETED = FALSE ORDER BY ID";
+    private static final String SELECT_BY_ID_FOR_UPDATE_SQL = "SELECT ID, FULL_NAME, TITLE, AGE, VERSION " +
+            "FROM PERSON WHERE ID = ? AND DELETED = FALSE FOR UPDATE";
+    private static final String DELETE_SQL = "DELETE FROM PERSON WHERE ID = ?";
+    private static final String MARK_DELETED_SQL = "UPDATE PERSON SET DELETED = TRUE, VERSION = VERSION + 1 " +
+            "WHERE ID = ? AND DELETED = FALSE";
+    private static final String QUEUE_PURGE_SQL = "INSERT INTO PERSON_PURGE(PERSON_ID) VALUES (?)";
+
+    /**
+     * Parameter types and generated key columns of the insert are declared once, a call
+     * only binds its values.
+     */
+    private static final PreparedStatementCreatorFactory INSERT_FACTORY = insertFactory();
+
+    /**
+     * Maps the columns of the user selects by index, in the order of their select list.
+     */
+    private static final RowMapper<UserDto> USER_ROW_MAPPER = UserServiceImplTemplate::mapUser;
+
     private final JdbcTemplate jdbcTemplate;
+    private final UserBooksCache userBooksCache;
+    private final UserExistenceFilter userExistenceFilter;
+    private final UserBookStats userBookStats;
+    private final DeleteProperties deleteProperties;
 
-    public UserServiceImplTemplate(JdbcTemplate jdbcTemplate) {
+    public UserServiceImplTemplate(JdbcTemplate jdbcTemplate,
+                                   UserBooksCache userBooksCache,
+                                   UserExistenceFilter userExistenceFilter,
+                                   UserBookStats userBookStats,
+                                   DeleteProperties deleteProperties) {
         this.jdbcTemplate = jdbcTemplate;
+        this.userBooksCache = userBooksCache;
+        this.userExistenceFilter = userExistenceFilter;
+        this.userBookStats = userBookStats;
+        this.deleteProperties = deleteProperties;
     }
 
     @Override
     public UserDto createUser(UserDto userDto) {
-
-        final String INSERT_SQL = "INSERT INTO PERSON(FULL_NAME, TITLE, AGE) VALUES (?,?,?)";
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(
-                connection -> {
-                    PreparedStatement ps = connection.prepareStatement(INSERT_SQL, new String[]{"id"});
-                    ps.setString(1, userDto.getFullName());
-                    ps.setString(2, userDto.getTitle());
-                    ps.setLong(3, userDto.getAge());
-                    return ps;
-                }, keyHolder);
+                INSERT_FACTORY.newPreparedStatementCreator(new Object[]{
+                        userDto.getFullName(), userDto.getTitle(), userDto.getAge()}),
+                keyHolder);
 
         userDto.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        userDto.setVersion(0L);
+        userExistenceFilter.add(userDto.getId());
+        userBookStats.addUser(userDto.getId());
         return userDto;
     }
 
+    @Override
+    public List<UserDto> createUsers(List<UserDto> userDtos) {
+        if (userDtos.isEmpty()) {
+            return userDtos;
+        }
+        return jdbcTemplate.execute(
+                connection -> connection.prepareStatement(INSERT_SQL, GENERATED_KEY_COLUMNS),
+                (PreparedStatementCallback<List<UserDto>>) ps -> {
+                    for (UserDto userDto : userDtos) {
+                        ps.setString(1, userDto.getFullName());
+                        ps.setString(2, userDto.getTitle());
+                        ps.setLong(3, userDto.getAge());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        for (UserDto userDto : userDtos) {
+                            if (!keys.next()) {
+                                throw new DataRetrievalFailureException(
+                                        "Generated key is missing for user: " + userDto.getFullName());
+                            }
+                            userDto.setId(keys.getLong(1));
+                            userDto.setVersion(0L);
+                            userExistenceFilter.add(userDto.getId());
+                            userBookStats.addUser(userDto.getId());
+                        }
+                    }
+                    return userDtos;
+                });
+    }
+
     @Override
     public UserDto updateUser(UserDto userDto) {
-        // реализовать недстающие методы
-        return null;
+        int updated = jdbcTemplate.update(UPDATE_SQL, ps -> {
+            ps.setString(1, userDto.getFullName());
+            ps.setString(2, userDto.getTitle());
+            ps.setInt(3, userDto.getAge());
+            ps.setLong(4, userDto.getId());
+            ps.setObject(5, userDto.getVersion(), Types.BIGINT);
+        });
+        if (updated == 0) {
+            if (userDto.getVersion() != null) {
+                throw new OptimisticLockingFailureException(
+                        "User with id " + userDto.getId() + " was modified concurrently");
+            }
+            throw new NotFoundException("User with id " + userDto.getId() + " not found");
+        }
+        if (userDto.getVersion() != null) {
+            userDto.setVersion(userDto.getVersion() + 1);
+        }
+        return userDto;
+    }
+
+    @Override
+    public void incrementVersion(Long id, Long version) {
+        if (jdbcTemplate.update(INCREMENT_VERSION_SQL, id, version) == 0) {
+            throw new OptimisticLockingFailureException("User with id " + id + " was modified concurrently");
+        }
     }
 
     @Override
+    @Transactional(readOnly = true)
     public UserDto getUserById(Long id) {
-        // реализовать недстающие методы
-        return null;
+        return jdbcTemplate.query(SELECT_BY_ID_SQL, USER_ROW_MAPPER, id)
+                .stream()
+                .findFirst()
+                .orElseThrow(() -> new NotFoundException("User with id " + id + " not found"));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UserDto> getUsers(long afterId, int limit) {
+        return jdbcTemplate.query(SELECT_PAGE_SQL, USER_ROW_MAPPER, afterId, limit);
+    }
+
+    @Override
+    public Stream<UserDto> streamUsers(int fetchSize) {
+        return jdbcTemplate.queryForStream(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_ALL_SQL);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, USER_ROW_MAPPER);
+    }
+
+    @Override
+    public UserDto getUserByIdForUpdate(Long id) {
+        return jdbcTemplate.query(SELECT_BY_ID_FOR_UPDATE_SQL, USER_ROW_MAPPER, id)
+                .stream()
+                .findFirst()
+                .orElseThrow(() -> new NotFoundException("User with id " + id + " not found"));
     }
 
     @Override
     public void deleteUserById(Long id) {
-        // реализовать недстающие методы
+        boolean soft = deleteProperties.getMode() == DeleteProperties.Mode.SOFT;
+        int deleted = jdbcTemplate.update(soft ? MARK_DELETED_SQL : DELETE_SQL, id);
+        if (deleted == 0) {
+            throw new NotFoundException("User with id " + id + " not found");
+        }
+        if (soft) {
+            jdbcTemplate.update(QUEUE_PURGE_SQL, id);
+        }
+        log.debug("Deleted user: {}", id);
+        userBooksCache.evict(id);
+        userExistenceFilter.remove(id);
+        userBookStats.removeUser(id);
+    }
+
+    private static UserDto mapUser(ResultSet rs, int rowNum) throws SQLException {
+        UserDto userDto = new UserDto();
+        userDto.setId(rs.getLong(1));
+        userDto.setFullName(rs.getString(2));
+        userDto.setTitle(rs.getString(3));
+        userDto.setAge(rs.getInt(4));
+        userDto.setVersion(rs.getLong(5));
+        return userDto;
+    }
+
+    private static PreparedStatementCreatorFactory insertFactory() {
+        PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(
+                INSERT_SQL, Types.VARCHAR, Types.VARCHAR, Types.INTEGER);
+        factory.setGeneratedKeysColumnNames(GENERATED_KEY_COLUMNS);
+        return factory;
     }
 }
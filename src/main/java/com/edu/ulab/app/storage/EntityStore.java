@@ -0,0 +1,17 @@
+package com.edu.ulab.app.storage;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Primary index of one entity type, keyed by primitive id.
+ * Semantics of the methods are the ones of {@link LongKeyMap}.
+ */
+interface EntityStore<T> {
+    T get(long id);
+
+    T put(long id, T entity);
+
+    T remove(long id);
+
+    T compute(long id, UnaryOperator<T> remappingFunction);
+}
@@ -0,0 +1,30 @@
+package com.edu.ulab.app.storage;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps entities on the heap.
+ */
+class HeapEntityStore<T> implements EntityStore<T> {
+    private final LongKeyMap<T> entities = new LongKeyMap<>();
+
+    @Override
+    public T get(long id) {
+        return entities.get(id);
+    }
+
+    @Override
+    public T put(long id, T entity) {
+        return entities.put(id, entity);
+    }
+
+    @Override
+    public T remove(long id) {
+        return entities.remove(id);
+    }
+
+    @Override
+    public T compute(long id, UnaryOperator<T> remappingFunction) {
+        return entities.compute(id, remappingFunction);
+    }
+}
@@ -0,0 +1,207 @@
+package com.edu.ulab.app.storage;
+
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Concurrent hash map with primitive {@code long} keys.
+ * <p>
+ * Keys are spread over lock-striped segments, each segment is an open addressing
+ * table with linear probing, so lookups never box the key. Reads are optimistic and
+ * fall back to a read lock only when they race with a write to the same segment.
+ * Null values are not supported.
+ */
+public class LongKeyMap<V> {
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public LongKeyMap() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(INITIAL_SEGMENT_CAPACITY);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int hash = hash(key);
+        return (V) segmentFor(hash).get(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value);
+        int hash = hash(key);
+        return (V) segmentFor(hash).compute(key, hash, current -> value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int hash = hash(key);
+        return (V) segmentFor(hash).compute(key, hash, current -> null);
+    }
+
+    /**
+     * Atomically replaces the value of the key with the result of the function.
+     * The function gets {@code null} for an absent key, returning {@code null} removes the key.
+     * It runs under the segment lock and must be short.
+     *
+     * @return the new value
+     */
+    @SuppressWarnings("unchecked")
+    public V compute(long key, UnaryOperator<V> remappingFunction) {
+        int hash = hash(key);
+        Object[] result = new Object[1];
+        segmentFor(hash).compute(key, hash, current -> {
+            result[0] = remappingFunction.apply((V) current);
+            return result[0];
+        });
+        return (V) result[0];
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+
+        int indexOf(long key, int hash) {
+            for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                if (values[i] == null) {
+                    return -1;
+                }
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private Table table;
+        private volatile int size;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        Object get(long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            Object value = find(table, key, hash);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    value = find(table, key, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return value;
+        }
+
+        Object compute(long key, int hash, UnaryOperator<Object> remappingFunction) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int index = t.indexOf(key, hash);
+                Object current = index < 0 ? null : t.values[index];
+                Object value = remappingFunction.apply(current);
+                if (value == null) {
+                    if (index >= 0) {
+                        delete(t, index);
+                        size--;
+                    }
+                } else if (index >= 0) {
+                    t.values[index] = value;
+                } else {
+                    insert(t, key, hash, value);
+                    if (++size * 2 > t.values.length) {
+                        table = resize(t);
+                    }
+                }
+                return current;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private static Object find(Table t, long key, int hash) {
+            int index = t.indexOf(key, hash);
+            return index < 0 ? null : t.values[index];
+        }
+
+        private static void insert(Table t, long key, int hash, Object value) {
+            int i = hash & t.mask;
+            while (t.values[i] != null) {
+                i = (i + 1) & t.mask;
+            }
+            t.keys[i] = key;
+            t.values[i] = value;
+        }
+
+        /**
+         * Backward shift deletion: entries of the probe chain after the hole are moved
+         * back unless their home slot lies between the hole and their current position.
+         */
+        private static void delete(Table t, int index) {
+            int hole = index;
+            int i = index;
+            while (true) {
+                i = (i + 1) & t.mask;
+                Object value = t.values[i];
+                if (value == null) {
+                    break;
+                }
+                int home = hash(t.keys[i]) & t.mask;
+                if (((i - home) & t.mask) >= ((i - hole) & t.mask)) {
+                    t.keys[hole] = t.keys[i];
+                    t.values[hole] = value;
+                    hole = i;
+                }
+            }
+            t.keys[hole] = 0L;
+            t.values[hole] = null;
+        }
+
+        private static Table resize(Table t) {
+            Table resized = new Table(t.values.length * 2);
+            for (int i = 0; i < t.values.length; i++) {
+                if (t.values[i] != null) {
+                    insert(resized, t.keys[i], hash(t.keys[i]), t.values[i]);
+                }
+            }
+            return resized;
+        }
+    }
+}
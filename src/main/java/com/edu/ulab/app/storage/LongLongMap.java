@@ -0,0 +1,222 @@
+package com.edu.ulab.app.storage;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Concurrent hash map from primitive {@code long} keys to non-negative {@code long} values.
+ * <p>
+ * Same layout as {@link LongKeyMap} with the values kept in a {@code long[]}, so neither
+ * keys nor values are boxed. {@link #NO_VALUE} marks an absent key.
+ */
+public class LongLongMap {
+    public static final long NO_VALUE = -1L;
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public LongLongMap() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(INITIAL_SEGMENT_CAPACITY);
+        }
+    }
+
+    public long get(long key) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    public long put(long key, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int hash = hash(key);
+        return segmentFor(hash).compute(key, hash, current -> value)[0];
+    }
+
+    public long remove(long key) {
+        int hash = hash(key);
+        return segmentFor(hash).compute(key, hash, current -> NO_VALUE)[0];
+    }
+
+    /**
+     * Atomically replaces the value of the key with the result of the function.
+     * The function gets {@link #NO_VALUE} for an absent key, returning it removes the key.
+     * It runs under the segment lock and must be short.
+     *
+     * @return the new value
+     */
+    public long compute(long key, LongUnaryOperator remappingFunction) {
+        int hash = hash(key);
+        return segmentFor(hash).compute(key, hash, remappingFunction)[1];
+    }
+
+    public void forEach(Consumer action) {
+        for (Segment segment : segments) {
+            segment.forEach(action);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, long value);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Values are stored shifted by one, so zero marks a free slot.
+     */
+    private static final class Table {
+        final long[] keys;
+        final long[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        int indexOf(long key, int hash) {
+            for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                if (values[i] == 0L) {
+                    return -1;
+                }
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        long valueOf(long key, int hash) {
+            int index = indexOf(key, hash);
+            return index < 0 ? NO_VALUE : values[index] - 1;
+        }
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private Table table;
+        private volatile int size;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        long get(long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            long value = table.valueOf(key, hash);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    value = table.valueOf(key, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return value;
+        }
+
+        /**
+         * @return the previous and the new value
+         */
+        long[] compute(long key, int hash, LongUnaryOperator remappingFunction) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int index = t.indexOf(key, hash);
+                long current = index < 0 ? NO_VALUE : t.values[index] - 1;
+                long value = remappingFunction.applyAsLong(current);
+                if (value < 0) {
+                    if (index >= 0) {
+                        delete(t, index);
+                        size--;
+                    }
+                } else if (index >= 0) {
+                    t.values[index] = value + 1;
+                } else {
+                    insert(t, key, hash, value + 1);
+                    if (++size * 2 > t.values.length) {
+                        table = resize(t);
+                    }
+                }
+                return new long[]{current, value < 0 ? NO_VALUE : value};
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void forEach(Consumer action) {
+            long stamp = lock.readLock();
+            try {
+                Table t = table;
+                for (int i = 0; i < t.values.length; i++) {
+                    if (t.values[i] != 0L) {
+                        action.accept(t.keys[i], t.values[i] - 1);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private static void insert(Table t, long key, int hash, long storedValue) {
+            int i = hash & t.mask;
+            while (t.values[i] != 0L) {
+                i = (i + 1) & t.mask;
+            }
+            t.keys[i] = key;
+            t.values[i] = storedValue;
+        }
+
+        private static void delete(Table t, int index) {
+            int hole = index;
+            int i = index;
+            while (true) {
+                i = (i + 1) & t.mask;
+                long value = t.values[i];
+                if (value == 0L) {
+                    break;
+                }
+                int home = hash(t.keys[i]) & t.mask;
+                if (((i - home) & t.mask) >= ((i - hole) & t.mask)) {
+                    t.keys[hole] = t.keys[i];
+                    t.values[hole] = value;
+                    hole = i;
+                }
+            }
+            t.keys[hole] = 0L;
+            t.values[hole] = 0L;
+        }
+
+        private static Table resize(Table t) {
+            Table resized = new Table(t.values.length * 2);
+            for (int i = 0; i < t.values.length; i++) {
+                if (t.values[i] != 0L) {
+                    insert(resized, t.keys[i], hash(t.keys[i]), t.values[i]);
+                }
+            }
+            return resized;
+        }
+    }
+}
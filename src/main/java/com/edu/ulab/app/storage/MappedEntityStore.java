@@ -0,0 +1,111 @@
+package com.edu.ulab.app.storage;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps entities serialized in a {@link SegmentLog}; the heap holds only the
+ * id to record position index. Every change appends a record, a removal appends
+ * a tombstone. Entities are decoded on each read.
+ */
+class MappedEntityStore<T> implements EntityStore<T> {
+    private final SegmentLog segmentLog;
+    private final RecordCodec<T> codec;
+    private final byte putType;
+    private final byte removeType;
+    private final LongLongMap positions = new LongLongMap();
+    private long maxReplayedId;
+
+    MappedEntityStore(SegmentLog segmentLog, RecordCodec<T> codec, byte putType, byte removeType) {
+        this.segmentLog = segmentLog;
+        this.codec = codec;
+        this.putType = putType;
+        this.removeType = removeType;
+    }
+
+    /**
+     * Applies a recovered log record.
+     *
+     * @return {@code false} if the record belongs to another store
+     */
+    boolean replay(byte type, long id, long position) {
+        if (type == putType || type == removeType) {
+            maxReplayedId = Math.max(maxReplayedId, id);
+        }
+        if (type == putType) {
+            positions.put(id, position);
+            return true;
+        }
+        if (type == removeType) {
+            positions.remove(id);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Highest id of all recovered records, tombstones included: the id of a removed
+     * entity is never issued again.
+     */
+    long maxReplayedId() {
+        return maxReplayedId;
+    }
+
+    void forEach(LongObjConsumer<T> action) {
+        positions.forEach((id, position) -> action.accept(id, read(id, position)));
+    }
+
+    @FunctionalInterface
+    interface LongObjConsumer<T> {
+        void accept(long id, T entity);
+    }
+
+    @Override
+    public T get(long id) {
+        long position = positions.get(id);
+        return position == LongLongMap.NO_VALUE ? null : read(id, position);
+    }
+
+    @Override
+    public T put(long id, T entity) {
+        return compute(id, current -> entity);
+    }
+
+    @Override
+    public T remove(long id) {
+        Object[] removed = new Object[1];
+        positions.compute(id, position -> {
+            if (position != LongLongMap.NO_VALUE) {
+                removed[0] = read(id, position);
+                segmentLog.append(removeType, id, RecordCodec.EMPTY);
+            }
+            return LongLongMap.NO_VALUE;
+        });
+        @SuppressWarnings("unchecked")
+        T entity = (T) removed[0];
+        return entity;
+    }
+
+    @Override
+    public T compute(long id, UnaryOperator<T> remappingFunction) {
+        Object[] result = new Object[1];
+        positions.compute(id, position -> {
+            T current = position == LongLongMap.NO_VALUE ? null : read(id, position);
+            T entity = remappingFunction.apply(current);
+            result[0] = entity;
+            if (entity == null) {
+                if (current != null) {
+                    segmentLog.append(removeType, id, RecordCodec.EMPTY);
+                }
+                return LongLongMap.NO_VALUE;
+            }
+            return segmentLog.append(putType, id, codec.encode(entity));
+        });
+        @SuppressWarnings("unchecked")
+        T entity = (T) result[0];
+        return entity;
+    }
+
+    private T read(long id, long position) {
+        return codec.decode(id, segmentLog.payload(position));
+    }
+}
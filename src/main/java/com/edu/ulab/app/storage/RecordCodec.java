@@ -0,0 +1,109 @@
+package com.edu.ulab.app.storage;
+
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.entity.Person;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed layout of an entity in a {@link SegmentLog} record payload.
+ * The id is part of the record header and is not encoded here.
+ * Strings are stored as an int length (-1 for null) followed by UTF-8 bytes.
+ * The version comes last, records written before it was added read as version 0.
+ */
+interface RecordCodec<T> {
+    ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    ByteBuffer encode(T entity);
+
+    T decode(long id, ByteBuffer payload);
+
+    /**
+     * int age | fullName | title | long version
+     */
+    RecordCodec<Person> PERSON = new RecordCodec<>() {
+        @Override
+        public ByteBuffer encode(Person person) {
+            byte[] fullName = bytes(person.getFullName());
+            byte[] title = bytes(person.getTitle());
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + size(fullName) + size(title) + Long.BYTES);
+            buffer.putInt(person.getAge());
+            putString(buffer, fullName);
+            putString(buffer, title);
+            buffer.putLong(person.getVersion());
+            return buffer.flip();
+        }
+
+        @Override
+        public Person decode(long id, ByteBuffer payload) {
+            Person person = new Person();
+            person.setId(id);
+            person.setAge(payload.getInt());
+            person.setFullName(getString(payload));
+            person.setTitle(getString(payload));
+            person.setVersion(getVersion(payload));
+            return person;
+        }
+    };
+
+    /**
+     * long userId | long pageCount | title | author | long version
+     */
+    RecordCodec<Book> BOOK = new RecordCodec<>() {
+        @Override
+        public ByteBuffer encode(Book book) {
+            byte[] title = bytes(book.getTitle());
+            byte[] author = bytes(book.getAuthor());
+            ByteBuffer buffer = ByteBuffer.allocate(3 * Long.BYTES + size(title) + size(author));
+            buffer.putLong(book.getUserId());
+            buffer.putLong(book.getPageCount());
+            putString(buffer, title);
+            putString(buffer, author);
+            buffer.putLong(book.getVersion());
+            return buffer.flip();
+        }
+
+        @Override
+        public Book decode(long id, ByteBuffer payload) {
+            Book book = new Book();
+            book.setId(id);
+            book.setUserId(payload.getLong());
+            book.setPageCount(payload.getLong());
+            book.setTitle(getString(payload));
+            book.setAuthor(getString(payload));
+            book.setVersion(getVersion(payload));
+            return book;
+        }
+    };
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int size(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static long getVersion(ByteBuffer buffer) {
+        return buffer.remaining() >= Long.BYTES ? buffer.getLong() : 0L;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
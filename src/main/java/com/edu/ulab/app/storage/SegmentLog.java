@@ -0,0 +1,237 @@
+package com.edu.ulab.app.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of records in memory-mapped segment files.
+ * <p>
+ * A segment is a fixed size file {@code segment-NNNNNN.log} mapped as a whole.
+ * Records never span segments and start on {@link #SLOT_SIZE} boundaries:
+ * <pre>
+ * int length | byte type | long id | payload | int crc32c
+ * </pre>
+ * {@code length} covers type, id and payload; the checksum covers the same bytes.
+ * A zero length or a checksum mismatch marks the end of the log, so a record torn
+ * by a crash is dropped on recovery and overwritten by the next append.
+ * <p>
+ * A record is addressed by its position: segment number in the high and offset in
+ * the low 32 bits.
+ */
+@Slf4j
+public class SegmentLog implements Closeable {
+    public static final int SLOT_SIZE = 64;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Long.BYTES;
+    private static final int CHECKSUM_SIZE = Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private int writeOffset;
+
+    public SegmentLog(Path directory, int segmentSize, boolean fsync) {
+        if (segmentSize % SLOT_SIZE != 0) {
+            throw new IllegalArgumentException("Segment size must be a multiple of " + SLOT_SIZE);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(byte type, long id, long position);
+    }
+
+    /**
+     * Maps the existing segments and visits their records in append order.
+     * Must be called once, before the first append.
+     */
+    public void recover(RecordVisitor visitor) {
+        try {
+            Files.createDirectories(directory);
+            int segmentCount = 0;
+            while (Files.exists(segmentPath(segmentCount))) {
+                segmentCount++;
+            }
+            for (int i = 0; i < segmentCount; i++) {
+                segments.add(map(segmentPath(i)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open storage segments in " + directory, e);
+        }
+        if (segments.isEmpty()) {
+            segments.add(mapNewSegment(0));
+            return;
+        }
+
+        long records = 0;
+        for (int segment = 0; segment < segments.size(); segment++) {
+            MappedByteBuffer buffer = segments.get(segment);
+            int offset = 0;
+            while (offset + HEADER_SIZE + CHECKSUM_SIZE <= segmentSize) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || offset + Integer.BYTES + length + CHECKSUM_SIZE > segmentSize
+                        || checksum(buffer, offset, length) != buffer.getInt(offset + Integer.BYTES + length)) {
+                    break;
+                }
+                visitor.visit(buffer.get(offset + Integer.BYTES),
+                        buffer.getLong(offset + Integer.BYTES + Byte.BYTES),
+                        position(segment, offset));
+                records++;
+                offset = align(offset + Integer.BYTES + length + CHECKSUM_SIZE);
+            }
+            writeOffset = offset;
+        }
+        clearTornTail(segments.get(segments.size() - 1), writeOffset);
+        log.info("Recovered {} records from {} storage segments in {}", records, segments.size(), directory);
+    }
+
+    /**
+     * @return position of the appended record
+     */
+    public long append(byte type, long id, ByteBuffer payload) {
+        int length = Byte.BYTES + Long.BYTES + payload.remaining();
+        int recordSize = Integer.BYTES + length + CHECKSUM_SIZE;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Record of " + recordSize + " bytes doesn't fit into a segment");
+        }
+        appendLock.lock();
+        try {
+            if (writeOffset + recordSize > segmentSize) {
+                segments.add(mapNewSegment(segments.size()));
+                writeOffset = 0;
+            }
+            int segment = segments.size() - 1;
+            int offset = writeOffset;
+            MappedByteBuffer buffer = segments.get(segment);
+            buffer.put(offset + Integer.BYTES, type);
+            buffer.putLong(offset + Integer.BYTES + Byte.BYTES, id);
+            buffer.put(offset + HEADER_SIZE, payload, payload.position(), payload.remaining());
+            buffer.putInt(offset + Integer.BYTES + length, checksum(buffer, offset, length));
+            buffer.putInt(offset, length);
+            if (fsync) {
+                buffer.force(offset, recordSize);
+            }
+            writeOffset = align(offset + recordSize);
+            return position(segment, offset);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return read-only view of the payload of the record at the position
+     */
+    public ByteBuffer payload(long position) {
+        MappedByteBuffer buffer = segments.get((int) (position >>> 32));
+        int offset = (int) position;
+        int length = buffer.getInt(offset);
+        return buffer.slice(offset + HEADER_SIZE, length - Byte.BYTES - Long.BYTES).asReadOnlyBuffer();
+    }
+
+    /**
+     * Drops all records if the condition, checked under the append lock, holds: the
+     * segments after the first are deleted, newest first, then the first is zeroed.
+     *
+     * @return whether the log was cleared
+     */
+    public boolean clearIf(BooleanSupplier condition) {
+        appendLock.lock();
+        try {
+            if (!condition.getAsBoolean()) {
+                return false;
+            }
+            int used = segments.size() > 1 ? segmentSize : writeOffset;
+            for (int segment = segments.size() - 1; segment > 0; segment--) {
+                Files.deleteIfExists(segmentPath(segment));
+                segments.remove(segment);
+            }
+            MappedByteBuffer first = segments.get(0);
+            for (int i = 0; i < used; i++) {
+                first.put(i, (byte) 0);
+            }
+            if (fsync) {
+                first.force(0, used);
+            }
+            writeOffset = 0;
+            return true;
+        } catch (IOException e) {
+            // the remaining segments are intact, appends continue in a new one
+            writeOffset = segmentSize;
+            throw new UncheckedIOException("Can't delete segments in " + directory, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            segments.forEach(MappedByteBuffer::force);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void clearTornTail(MappedByteBuffer buffer, int offset) {
+        if (offset + Integer.BYTES <= segmentSize && buffer.getInt(offset) != 0) {
+            log.warn("Dropping torn storage record at offset {}", offset);
+            for (int i = offset; i < segmentSize; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private MappedByteBuffer mapNewSegment(int segment) {
+        try {
+            return map(segmentPath(segment));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't create storage segment " + segment + " in " + directory, e);
+        }
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("segment-%06d.log", segment));
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + Integer.BYTES, length));
+        return (int) crc.getValue();
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static int align(int offset) {
+        return (offset + SLOT_SIZE - 1) / SLOT_SIZE * SLOT_SIZE;
+    }
+}
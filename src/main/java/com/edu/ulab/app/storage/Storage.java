@@ -1,11 +1,392 @@
 package com.edu.ulab.app.storage;
 
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.exception.NotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory storage of users and their books.
+ * <p>
+ * Entities are kept in primary indexes keyed by primitive ids, ids are generated
+ * by {@link AtomicLong} sequences. The secondary index maps a user id to the ids
+ * of the user's books; its arrays are copy-on-write, so readers never lock them.
+ * The ids of existing users are also kept ordered, for the pages of users.
+ * A user has an index entry from creation until deletion, a book can be saved
+ * only while the entry exists.
+ * <p>
+ * Stored entities are owned by the storage: callers pass fresh instances and
+ * must not modify the returned ones. Every update increments the entity version;
+ * an update carrying a version fails unless it matches the stored one.
+ * <p>
+ * In the durable mode ({@code app.storage.durable}) users and books live off-heap in
+ * a {@link SegmentLog} and the heap keeps only the indexes; on startup the indexes
+ * are rebuilt by scanning the segments. The sequences continue after the highest id in
+ * the log, deleted entities included, so an id is never issued twice.
+ */
+@Slf4j
+@Component
 public class Storage {
-    //todo создать хранилище в котором будут содержаться данные
-    // сделать абстракции через которые можно будет производить операции с хранилищем
-    // продумать логику поиска и сохранения
-    // продумать возможные ошибки
-    // учесть, что при сохранеии юзера или книги, должен генерироваться идентификатор
-    // продумать что у узера может быть много книг и нужно создать эту связь
-    // так же учесть, что методы хранилища принимают друго тип данных - учесть это в абстракции
+    private static final long[] NO_IDS = new long[0];
+
+    private static final byte USER_PUT = 1;
+    private static final byte USER_REMOVE = 2;
+    private static final byte BOOK_PUT = 3;
+    private static final byte BOOK_REMOVE = 4;
+
+    private final AtomicLong userIdSequence = new AtomicLong();
+    private final AtomicLong bookIdSequence = new AtomicLong();
+
+    private final EntityStore<Person> users;
+    private final EntityStore<Book> books;
+    private final LongKeyMap<long[]> bookIdsByUserId = new LongKeyMap<>();
+    private final NavigableSet<Long> userIds = new ConcurrentSkipListSet<>();
+
+    private final SegmentLog segmentLog;
+
+    public Storage(StorageProperties properties) {
+        if (!properties.isDurable()) {
+            users = new HeapEntityStore<>();
+            books = new HeapEntityStore<>();
+            segmentLog = null;
+            return;
+        }
+        segmentLog = new SegmentLog(Path.of(properties.getDirectory()),
+                properties.getSegmentSize(), properties.isFsync());
+        MappedEntityStore<Person> mappedUsers =
+                new MappedEntityStore<>(segmentLog, RecordCodec.PERSON, USER_PUT, USER_REMOVE);
+        MappedEntityStore<Book> mappedBooks =
+                new MappedEntityStore<>(segmentLog, RecordCodec.BOOK, BOOK_PUT, BOOK_REMOVE);
+        segmentLog.recover((type, id, position) -> {
+            if (!mappedUsers.replay(type, id, position) && !mappedBooks.replay(type, id, position)) {
+                throw new IllegalStateException("Unknown storage record type " + type);
+            }
+        });
+        users = mappedUsers;
+        books = mappedBooks;
+        rebuildIndexes(mappedUsers, mappedBooks);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (segmentLog != null) {
+            segmentLog.close();
+        }
+    }
+
+    public Person createUser(Person user) {
+        long id = userIdSequence.incrementAndGet();
+        user.setId(id);
+        user.setVersion(0L);
+        users.put(id, user);
+        bookIdsByUserId.put(id, NO_IDS);
+        userIds.add(id);
+        return user;
+    }
+
+    public Person updateUser(Person user) {
+        long id = user.getId();
+        Person current = users.compute(id, existing -> {
+            if (existing == null) {
+                return null;
+            }
+            checkVersion("User", id, user.getVersion(), existing.getVersion());
+            user.setVersion(existing.getVersion() + 1);
+            return user;
+        });
+        if (current == null) {
+            throw userNotFound(id);
+        }
+        return user;
+    }
+
+    public Optional<Person> findUser(long id) {
+        return Optional.ofNullable(users.get(id));
+    }
+
+    /**
+     * Users with ids greater than {@code afterId} in id order, read from the ordered ids
+     * of existing users, so a page costs its users and not the ids deleted in between.
+     */
+    public List<Person> findUsers(long afterId, int limit) {
+        List<Person> found = new ArrayList<>(Math.min(limit, 1024));
+        Iterator<Long> ids = userIds.tailSet(afterId, false).iterator();
+        while (ids.hasNext() && found.size() < limit) {
+            Person user = users.get(ids.next());
+            if (user != null) {
+                found.add(user);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * All users in id order, found {@code pageSize} at a time by {@link #findUsers}.
+     */
+    public Stream<Person> streamUsers(int pageSize) {
+        return Stream.iterate(findUsers(0, pageSize), page -> !page.isEmpty(),
+                        page -> page.size() < pageSize
+                                ? List.of()
+                                : findUsers(page.get(page.size() - 1).getId(), pageSize))
+                .flatMap(List::stream);
+    }
+
+    /**
+     * Deletes the user together with all the user's books.
+     *
+     * @return {@code false} if there is no such user
+     */
+    public boolean deleteUser(long id) {
+        long[] bookIds = bookIdsByUserId.remove(id);
+        if (bookIds == null) {
+            return false;
+        }
+        userIds.remove(id);
+        for (long bookId : bookIds) {
+            books.remove(bookId);
+        }
+        users.remove(id);
+        return true;
+    }
+
+    public Book createBook(Book book) {
+        long id = bookIdSequence.incrementAndGet();
+        book.setId(id);
+        book.setVersion(0L);
+        books.put(id, book);
+        appendBookIds(book.getUserId(), new long[]{id});
+        return book;
+    }
+
+    /**
+     * @return ids of the books in the order of {@code newBooks}
+     */
+    public long[] createBooks(List<Book> newBooks) {
+        Map<Long, List<Book>> booksByUserId = newBooks.stream()
+                .collect(Collectors.groupingBy(Book::getUserId));
+        booksByUserId.forEach((userId, userBooks) -> {
+            long[] ids = new long[userBooks.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Book book = userBooks.get(i);
+                ids[i] = bookIdSequence.incrementAndGet();
+                book.setId(ids[i]);
+                book.setVersion(0L);
+                books.put(ids[i], book);
+            }
+            appendBookIds(userId, ids);
+        });
+        long[] ids = new long[newBooks.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = newBooks.get(i).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * A book moving to another user is listed under the new user before the versioned
+     * write, and leaves the old user's entry only once the write succeeded; a failed write
+     * takes it out of the new entry again. The write fails as a concurrent modification if
+     * the book changed its user in between.
+     */
+    public Book updateBook(Book book) {
+        long id = book.getId();
+        Book current = books.get(id);
+        if (current == null) {
+            throw bookNotFound(id);
+        }
+        checkVersion("Book", id, book.getVersion(), current.getVersion());
+        long previousUserId = current.getUserId();
+        long userId = book.getUserId();
+        boolean moved = previousUserId != userId;
+        if (moved && !addBookIds(userId, new long[]{id})) {
+            throw userNotFound(userId);
+        }
+        Book updated;
+        try {
+            updated = books.compute(id, existing -> {
+                if (existing == null) {
+                    return null;
+                }
+                checkVersion("Book", id, book.getVersion(), existing.getVersion());
+                if (existing.getUserId() != previousUserId) {
+                    throw new OptimisticLockingFailureException("Book with id " + id + " was modified concurrently");
+                }
+                book.setVersion(existing.getVersion() + 1);
+                return book;
+            });
+        } catch (RuntimeException e) {
+            if (moved) {
+                removeBookId(userId, id);
+            }
+            throw e;
+        }
+        if (updated == null) {
+            if (moved) {
+                removeBookId(userId, id);
+            }
+            throw bookNotFound(id);
+        }
+        if (moved) {
+            removeBookId(previousUserId, id);
+        }
+        return book;
+    }
+
+    public Optional<Book> findBook(long id) {
+        return Optional.ofNullable(books.get(id));
+    }
+
+    public long[] findBookIdsByUserId(long userId) {
+        long[] bookIds = bookIdsByUserId.get(userId);
+        if (bookIds == null) {
+            throw userNotFound(userId);
+        }
+        return bookIds.clone();
+    }
+
+    /**
+     * @return no ids if there is no such user
+     */
+    public long[] findBookIdsByUserIdIfPresent(long userId) {
+        long[] bookIds = bookIdsByUserId.get(userId);
+        return bookIds == null ? NO_IDS : bookIds.clone();
+    }
+
+    /**
+     * @return {@code false} if there is no such book
+     */
+    public boolean deleteBook(long id) {
+        Book book = books.remove(id);
+        if (book == null) {
+            return false;
+        }
+        removeBookId(book.getUserId(), id);
+        return true;
+    }
+
+    /**
+     * Books are put into the primary index before their ids are published in the
+     * user's entry, so deleting the user never misses a book. If the user is gone
+     * the books are rolled back.
+     */
+    private void appendBookIds(long userId, long[] ids) {
+        if (!addBookIds(userId, ids)) {
+            for (long id : ids) {
+                books.remove(id);
+            }
+            throw userNotFound(userId);
+        }
+    }
+
+    /**
+     * @return {@code false} if there is no such user
+     */
+    private boolean addBookIds(long userId, long[] ids) {
+        long[] updated = bookIdsByUserId.compute(userId, bookIds -> {
+            if (bookIds == null) {
+                return null;
+            }
+            long[] merged = Arrays.copyOf(bookIds, bookIds.length + ids.length);
+            System.arraycopy(ids, 0, merged, bookIds.length, ids.length);
+            return merged;
+        });
+        return updated != null;
+    }
+
+    private void removeBookId(long userId, long id) {
+        bookIdsByUserId.compute(userId, bookIds -> {
+            if (bookIds == null) {
+                return null;
+            }
+            int index = indexOf(bookIds, id);
+            if (index < 0) {
+                return bookIds;
+            }
+            long[] reduced = new long[bookIds.length - 1];
+            System.arraycopy(bookIds, 0, reduced, 0, index);
+            System.arraycopy(bookIds, index + 1, reduced, index, reduced.length - index);
+            return reduced;
+        });
+    }
+
+    private void rebuildIndexes(MappedEntityStore<Person> mappedUsers, MappedEntityStore<Book> mappedBooks) {
+        Map<Long, IdList> bookIds = new HashMap<>();
+        mappedUsers.forEach((id, user) -> {
+            bookIds.put(id, new IdList());
+            userIds.add(id);
+        });
+        userIdSequence.set(mappedUsers.maxReplayedId());
+        mappedBooks.forEach((id, book) -> {
+            IdList ids = bookIds.get(book.getUserId());
+            if (ids != null) {
+                ids.add(id);
+            }
+        });
+        bookIdSequence.set(mappedBooks.maxReplayedId());
+        long bookCount = 0;
+        for (Map.Entry<Long, IdList> entry : bookIds.entrySet()) {
+            long[] ids = entry.getValue().toSortedArray();
+            bookIdsByUserId.put(entry.getKey(), ids);
+            bookCount += ids.length;
+        }
+        log.info("Storage recovered: {} users, {} books", bookIds.size(), bookCount);
+    }
+
+    private static final class IdList {
+        private long[] ids = NO_IDS;
+        private int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+            }
+            ids[size++] = id;
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    private static int indexOf(long[] ids, long id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void checkVersion(String entity, long id, Long expected, long actual) {
+        if (expected != null && expected != actual) {
+            throw new OptimisticLockingFailureException(entity + " with id " + id + " was modified concurrently");
+        }
+    }
+
+    private static NotFoundException userNotFound(long id) {
+        return new NotFoundException("User with id " + id + " not found");
+    }
+
+    private static NotFoundException bookNotFound(long id) {
+        return new NotFoundException("Book with id " + id + " not found");
+    }
 }
@@ -0,0 +1,25 @@
+package com.edu.ulab.app.storage;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.storage")
+public class StorageProperties {
+    /**
+     * Keep users and books in memory-mapped segment files instead of the heap.
+     */
+    private boolean durable = false;
+    /**
+     * Directory of the segment files.
+     */
+    private String directory = "storage";
+    /**
+     * Size of one segment file in bytes, must not change between restarts.
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+    /**
+     * Force every appended record to disk, otherwise it is left to the OS page cache.
+     */
+    private boolean fsync = false;
+}
@@ -1,9 +1,13 @@
 package com.edu.ulab.app.web;
 
 import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.facade.UserExportFacade;
+import com.edu.ulab.app.facade.UserImportFacade;
 import com.edu.ulab.app.web.constant.WebConstant;
 import com.edu.ulab.app.web.request.UserBookRequest;
 import com.edu.ulab.app.web.response.UserBookResponse;
+import com.edu.ulab.app.web.response.UserBookSummaryResponse;
+import com.edu.ulab.app.web.response.UserPageResponse;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -12,7 +16,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.Pattern;
+import java.io.IOException;
+import java.io.InputStream;
 
 import static com.edu.ulab.app.web.constant.WebConstant.REQUEST_ID_PATTERN;
 import static com.edu.ulab.app.web.constant.WebConstant.RQID;
@@ -23,9 +30,15 @@ import static com.edu.ulab.app.web.constant.WebConstant.RQID;
         produces = MediaType.APPLICATION_JSON_VALUE)
 public class UserController {
     private final UserDataFacade userDataFacade;
+    private final UserImportFacade userImportFacade;
+    private final UserExportFacade userExportFacade;
 
-    public UserController(UserDataFacade userDataFacade) {
+    public UserController(UserDataFacade userDataFacade,
+                          UserImportFacade userImportFacade,
+                          UserExportFacade userExportFacade) {
         this.userDataFacade = userDataFacade;
+        this.userImportFacade = userImportFacade;
+        this.userExportFacade = userExportFacade;
     }
 
     @PostMapping(value = "/create")
@@ -37,24 +50,65 @@ public class UserController {
     public UserBookResponse createUserWithBooks(@RequestBody UserBookRequest request,
                                                 @RequestHeader(RQID) @Pattern(regexp = REQUEST_ID_PATTERN) final String requestId) {
         UserBookResponse response = userDataFacade.createUserWithBooks(request);
-        log.info("Response with created user and his books: {}", response);
+        log.debug("Response with created user and his books: {}", response);
         return response;
     }
 
-    @PutMapping(value = "/update")
-    public UserBookResponse updateUserWithBooks(@RequestBody UserBookRequest request) {
-        UserBookResponse response = userDataFacade.updateUserWithBooks(request);
-        log.info("Response with updated user and his books: {}", response);
+    @PostMapping(value = "/import",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Import users with books from NDJSON, one result line per record.")
+    public void importUsersWithBooks(InputStream requestBody, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        userImportFacade.importUsersWithBooks(requestBody, response.getOutputStream());
+    }
+
+    @PutMapping(value = "/update/{userId}")
+    @Operation(summary = "Update user and the difference in his books.",
+            responses = {
+                    @ApiResponse(description = "User book",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = UserBookResponse.class)))})
+    public UserBookResponse updateUserWithBooks(@PathVariable Long userId,
+                                                @RequestBody UserBookRequest request) {
+        UserBookResponse response = userDataFacade.updateUserWithBooks(userId, request);
+        log.debug("Response with updated user and his books: {}", response);
         return response;
     }
 
     @GetMapping(value = "/get/{userId}")
     public UserBookResponse updateUserWithBooks(@PathVariable Long userId) {
         UserBookResponse response = userDataFacade.getUserWithBooks(userId);
-        log.info("Response with user and his books: {}", response);
+        log.debug("Response with user and his books: {}", response);
         return response;
     }
 
+    @GetMapping(value = "/get/{userId}/summary")
+    @Operation(summary = "Book count, page count and distinct authors of the user.",
+            responses = {
+                    @ApiResponse(description = "User book summary",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = UserBookSummaryResponse.class)))})
+    public UserBookSummaryResponse getUserBookSummary(@PathVariable Long userId) {
+        UserBookSummaryResponse response = userDataFacade.getUserBookSummary(userId);
+        log.debug("Response with user book summary: {}", response);
+        return response;
+    }
+
+    @GetMapping(value = "/list")
+    @Operation(summary = "Page of users with books after the given user id.")
+    public UserPageResponse getUsersWithBooks(@RequestParam(defaultValue = "0") long afterId,
+                                              @RequestParam(defaultValue = "100") int limit) {
+        return userDataFacade.getUsersWithBooks(afterId, limit);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export all users with books as NDJSON.")
+    public void exportUsersWithBooks(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        userExportFacade.exportUsersWithBooks(response.getOutputStream());
+    }
+
     @DeleteMapping(value = "/delete/{userId}")
     public void deleteUserWithBooks(@PathVariable Long userId) {
         log.info("Delete user and his books:  userId {}", userId);
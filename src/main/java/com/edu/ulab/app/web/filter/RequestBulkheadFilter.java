@@ -0,0 +1,75 @@
+package com.edu.ulab.app.web.filter;
+
+import com.edu.ulab.app.config.MetricsConfig;
+import com.edu.ulab.app.web.response.BaseWebResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves at most the given number of requests at once. Waiting requests get their turn
+ * in arrival order and are rejected with 503 after the acquire timeout.
+ */
+@Slf4j
+public class RequestBulkheadFilter extends OncePerRequestFilter {
+    private final Semaphore permits;
+    private final long acquireTimeoutNanos;
+    private final ObjectWriter errorWriter;
+    private final Counter rejected;
+
+    public RequestBulkheadFilter(int permits,
+                                 Duration acquireTimeout,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(permits, true);
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.errorWriter = objectMapper.writerFor(BaseWebResponse.class);
+        Gauge.builder(MetricsConfig.BULKHEAD_AVAILABLE, this.permits, Semaphore::availablePermits)
+                .description("Requests the bulkhead can take at once now")
+                .register(meterRegistry);
+        this.rejected = Counter.builder(MetricsConfig.BULKHEAD_REJECTED)
+                .description("Requests rejected after waiting for the bulkhead")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request,
+                                    final HttpServletResponse response,
+                                    final FilterChain filterChain) throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+            log.warn("Request rejected by bulkhead: {} {}", request.getMethod(), request.getRequestURI());
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            errorWriter.writeValue(response.getOutputStream(), new BaseWebResponse("Too many concurrent requests"));
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+}
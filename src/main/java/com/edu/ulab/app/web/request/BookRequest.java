@@ -4,6 +4,7 @@ import lombok.Data;
 
 @Data
 public class BookRequest {
+    private Long id;
     private String title;
     private String author;
     private long pageCount;
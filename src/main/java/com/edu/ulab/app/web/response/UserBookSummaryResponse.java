@@ -0,0 +1,15 @@
+package com.edu.ulab.app.web.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class UserBookSummaryResponse {
+    private Long userId;
+    private long bookCount;
+    private long pageCount;
+    private List<String> authors;
+}
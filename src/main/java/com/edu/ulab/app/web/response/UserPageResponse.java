@@ -0,0 +1,16 @@
+package com.edu.ulab.app.web.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class UserPageResponse {
+    private List<UserResponse> users;
+    /**
+     * {@code afterId} of the next page, {@code null} on the last page.
+     */
+    private Long nextAfterId;
+}
@@ -2,6 +2,13 @@ package com.edu.ulab.app.web.response;
 
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class UserResponse {
+    private Long id;
+    private String fullName;
+    private String title;
+    private int age;
+    private List<BookResponse> books;
 }
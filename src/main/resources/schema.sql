@@ -1,18 +1,35 @@
+DROP TABLE IF EXISTS BOOK;
+DROP TABLE IF EXISTS PERSON_PURGE;
 DROP TABLE IF EXISTS PERSON;
+
+DROP SEQUENCE IF EXISTS PERSON_SEQ;
+CREATE SEQUENCE IF NOT EXISTS PERSON_SEQ START WITH 10000 INCREMENT BY 50;
 CREATE TABLE IF NOT EXISTS PERSON
 (
-    ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    ID BIGINT DEFAULT NEXT VALUE FOR PERSON_SEQ PRIMARY KEY,
     FULL_NAME VARCHAR (255),
     TITLE VARCHAR (255),
-    AGE INTEGER
+    AGE INTEGER,
+    VERSION BIGINT DEFAULT 0 NOT NULL,
+    DELETED BOOLEAN DEFAULT FALSE NOT NULL
 );
 
-DROP TABLE IF EXISTS BOOK;
+CREATE TABLE IF NOT EXISTS PERSON_PURGE
+(
+    PERSON_ID BIGINT PRIMARY KEY,
+    CONSTRAINT FK_PERSON_PURGE_USER FOREIGN KEY (PERSON_ID) REFERENCES PERSON (ID) ON DELETE CASCADE
+);
+
+DROP SEQUENCE IF EXISTS BOOK_SEQ;
+CREATE SEQUENCE IF NOT EXISTS BOOK_SEQ START WITH 10000 INCREMENT BY 50;
 CREATE TABLE IF NOT EXISTS BOOK
 (
-    ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+    ID BIGINT DEFAULT NEXT VALUE FOR BOOK_SEQ PRIMARY KEY,
     TITLE VARCHAR (255),
     AUTHOR VARCHAR (255),
     PAGE_COUNT INTEGER,
-    USER_ID BIGINT
+    USER_ID BIGINT NOT NULL,
+    VERSION BIGINT DEFAULT 0 NOT NULL,
+    CONSTRAINT FK_BOOK_USER FOREIGN KEY (USER_ID) REFERENCES PERSON (ID) ON DELETE CASCADE
 );
+CREATE INDEX IF NOT EXISTS IDX_BOOK_USER_ID ON BOOK (USER_ID, ID);
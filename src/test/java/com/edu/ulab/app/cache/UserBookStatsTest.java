@@ -0,0 +1,196 @@
+package com.edu.ulab.app.cache;
+
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.BookStatsProperties;
+import com.edu.ulab.app.config.DeleteProperties;
+import com.edu.ulab.app.config.UserFilterProperties;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserBookSummaryDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.service.impl.BookServiceImplTemplate;
+import com.edu.ulab.app.service.impl.UserServiceImplTemplate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static com.edu.ulab.app.config.CacheConfig.USER_BOOKS_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Book stats kept by the deltas of the JdbcTemplate services on H2, checked against the
+ * stats loaded from the tables afresh.
+ */
+class UserBookStatsTest {
+    private static final DataSource DATA_SOURCE =
+            new DriverManagerDataSource("jdbc:h2:mem:book-stats;DB_CLOSE_DELAY=-1", "sa", "");
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(DATA_SOURCE);
+    private final TransactionTemplate transactionTemplate =
+            new TransactionTemplate(new DataSourceTransactionManager(DATA_SOURCE));
+
+    private UserBookStats userBookStats;
+    private UserServiceImplTemplate userService;
+    private BookServiceImplTemplate bookService;
+
+    @BeforeEach
+    void createServices() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(DATA_SOURCE);
+        userBookStats = load();
+        UserBooksCache userBooksCache = new UserBooksCache(new ConcurrentMapCacheManager(USER_BOOKS_CACHE));
+        UserFilterProperties filterProperties = new UserFilterProperties();
+        filterProperties.setEnabled(false);
+        UserExistenceFilter userExistenceFilter =
+                new UserExistenceFilter(filterProperties, backend(), DATA_SOURCE, new SimpleMeterRegistry());
+        userService = new UserServiceImplTemplate(jdbcTemplate, userBooksCache, userExistenceFilter,
+                userBookStats, new DeleteProperties());
+        bookService = new BookServiceImplTemplate(jdbcTemplate, userBooksCache, userBookStats);
+    }
+
+    @Test
+    void updateMovesPagesAndAuthors() {
+        long userId = createUser();
+        BookDto book = createBook(userId, "Austen", 100);
+        createBook(userId, "Bronte", 50);
+
+        BookDto changed = book(userId, "Tolstoy", 1200);
+        changed.setId(book.getId());
+        bookService.updateBook(changed);
+
+        assertSummary(userId, 2, 1250, "Bronte", "Tolstoy");
+    }
+
+    @Test
+    void updateMovesBookToAnotherUser() {
+        long from = createUser();
+        long to = createUser();
+        BookDto book = createBook(from, "Austen", 100);
+
+        BookDto moved = book(to, "Austen", 100);
+        moved.setId(book.getId());
+        bookService.updateBook(moved);
+
+        assertSummary(from, 0, 0);
+        assertSummary(to, 1, 100, "Austen");
+    }
+
+    @Test
+    void batchUpdateReplacesPreviousRows() {
+        long userId = createUser();
+        BookDto first = createBook(userId, "Austen", 100);
+        BookDto second = createBook(userId, "Austen", 200);
+
+        first.setAuthor("Bronte");
+        second.setPageCount(20);
+        transactionTemplate.executeWithoutResult(status -> bookService.updateBooks(List.of(first, second)));
+
+        assertSummary(userId, 2, 120, "Austen", "Bronte");
+    }
+
+    @Test
+    void staleBatchUpdateLeavesStatsUnchanged() {
+        long userId = createUser();
+        BookDto book = createBook(userId, "Austen", 100);
+
+        BookDto stale = book(userId, "Bronte", 10);
+        stale.setId(book.getId());
+        stale.setVersion(book.getVersion() + 1);
+
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(
+                status -> bookService.updateBooks(List.of(stale))))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertSummary(userId, 1, 100, "Austen");
+    }
+
+    @Test
+    void deleteSubtractsStoredRow() {
+        long userId = createUser();
+        BookDto first = createBook(userId, "Austen", 100);
+        BookDto second = createBook(userId, "Bronte", 50);
+        createBook(userId, "Bronte", 10);
+
+        bookService.deleteBookById(first.getId());
+        // the caller's copy is outdated, the stored row is subtracted
+        second.setPageCount(999);
+        second.setVersion(null);
+        transactionTemplate.executeWithoutResult(status -> bookService.deleteBooks(List.of(second)));
+
+        assertSummary(userId, 1, 10, "Bronte");
+    }
+
+    @Test
+    void rolledBackWriteLeavesStatsUnchanged() {
+        long userId = createUser();
+        createBook(userId, "Austen", 100);
+
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            createBook(userId, "Bronte", 50);
+            throw new IllegalStateException("rollback");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertSummary(userId, 1, 100, "Austen");
+    }
+
+    @Test
+    void deletedUserHasNoStats() {
+        long userId = createUser();
+        createBook(userId, "Austen", 100);
+
+        userService.deleteUserById(userId);
+
+        assertThatThrownBy(() -> userBookStats.getSummary(userId)).isInstanceOf(NotFoundException.class);
+    }
+
+    private void assertSummary(long userId, long bookCount, long pageCount, String... authors) {
+        UserBookSummaryDto summary = userBookStats.getSummary(userId);
+
+        assertThat(summary.getBookCount()).isEqualTo(bookCount);
+        assertThat(summary.getPageCount()).isEqualTo(pageCount);
+        assertThat(summary.getAuthors()).containsExactly(authors);
+        assertThat(summary).isEqualTo(load().getSummary(userId));
+    }
+
+    private long createUser() {
+        UserDto userDto = new UserDto();
+        userDto.setFullName("Reader");
+        userDto.setTitle("reader");
+        userDto.setAge(30);
+        return userService.createUser(userDto).getId();
+    }
+
+    private BookDto createBook(long userId, String author, long pageCount) {
+        return bookService.createBook(book(userId, author, pageCount));
+    }
+
+    private static BookDto book(long userId, String author, long pageCount) {
+        BookDto bookDto = new BookDto();
+        bookDto.setUserId(userId);
+        bookDto.setTitle("Title");
+        bookDto.setAuthor(author);
+        bookDto.setPageCount(pageCount);
+        return bookDto;
+    }
+
+    private static UserBookStats load() {
+        return new UserBookStats(new BookStatsProperties(), backend(), DATA_SOURCE, new SimpleMeterRegistry());
+    }
+
+    private static BackendProperties backend() {
+        BackendProperties backendProperties = new BackendProperties();
+        backendProperties.setRead(BackendProperties.Backend.JDBC);
+        backendProperties.setWrite(BackendProperties.Backend.JDBC);
+        return backendProperties;
+    }
+}
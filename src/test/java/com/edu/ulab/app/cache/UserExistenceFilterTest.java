@@ -0,0 +1,117 @@
+package com.edu.ulab.app.cache;
+
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.UserFilterProperties;
+import com.edu.ulab.app.exception.NotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The filter may pass unknown users, it must never reject a known one.
+ */
+class UserExistenceFilterTest {
+    private static final DataSource DATA_SOURCE =
+            new DriverManagerDataSource("jdbc:h2:mem:user-filter;DB_CLOSE_DELAY=-1", "sa", "");
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(DATA_SOURCE);
+
+    @BeforeEach
+    void createSchema() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(DATA_SOURCE);
+    }
+
+    @Test
+    void loadedUsersPass() {
+        for (long id = 1; id <= 100; id++) {
+            jdbcTemplate.update("INSERT INTO PERSON(ID, FULL_NAME, DELETED) VALUES (?, 'Reader', ?)", id, id > 90);
+        }
+
+        UserExistenceFilter filter = filter(1000);
+
+        assertThat(LongStream.rangeClosed(1, 90).allMatch(id -> passes(filter, id))).isTrue();
+    }
+
+    @Test
+    void unknownUsersAreMostlyRejected() {
+        UserExistenceFilter filter = filter(1000);
+        LongStream.rangeClosed(1, 1000).forEach(filter::add);
+
+        long passed = LongStream.rangeClosed(1001, 11_000).filter(id -> passes(filter, id)).count();
+
+        assertThat(passed).isLessThan(300);
+    }
+
+    @Test
+    void remainingUsersPassAfterRemovals() {
+        UserExistenceFilter filter = filter(1000);
+        LongStream.rangeClosed(1, 2000).forEach(filter::add);
+
+        LongStream.rangeClosed(1, 2000).filter(id -> id % 2 == 1).forEach(filter::remove);
+
+        assertThat(LongStream.rangeClosed(1, 2000).filter(id -> id % 2 == 0).allMatch(id -> passes(filter, id)))
+                .isTrue();
+    }
+
+    /**
+     * Counters stop at their maximum and are not decremented from it, a removal can't
+     * take a counter another user still needs to zero.
+     */
+    @Test
+    void saturatedCountersDoNotCauseFalseNegatives() {
+        UserExistenceFilter filter = filter(16);
+        LongStream.rangeClosed(1, 5000).forEach(filter::add);
+
+        LongStream.rangeClosed(1, 5000).filter(id -> id % 5 != 0).forEach(filter::remove);
+
+        assertThat(LongStream.rangeClosed(1, 5000).filter(id -> id % 5 == 0).allMatch(id -> passes(filter, id)))
+                .isTrue();
+    }
+
+    @Test
+    void removalIsUndoneByRollback() {
+        UserExistenceFilter filter = filter(1000);
+        filter.add(42L);
+        TransactionTemplate transactionTemplate =
+                new TransactionTemplate(new DataSourceTransactionManager(DATA_SOURCE));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            filter.remove(42L);
+            status.setRollbackOnly();
+        });
+        assertThat(passes(filter, 42)).isTrue();
+
+        transactionTemplate.executeWithoutResult(status -> filter.remove(42L));
+        assertThatThrownBy(() -> filter.check(42L)).isInstanceOf(NotFoundException.class);
+    }
+
+    private static boolean passes(UserExistenceFilter filter, long id) {
+        try {
+            filter.check(id);
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    private static UserExistenceFilter filter(int expectedUsers) {
+        UserFilterProperties properties = new UserFilterProperties();
+        properties.setExpectedUsers(expectedUsers);
+        BackendProperties backendProperties = new BackendProperties();
+        backendProperties.setRead(BackendProperties.Backend.JDBC);
+        backendProperties.setWrite(BackendProperties.Backend.JDBC);
+        return new UserExistenceFilter(properties, backendProperties, DATA_SOURCE, new SimpleMeterRegistry());
+    }
+}
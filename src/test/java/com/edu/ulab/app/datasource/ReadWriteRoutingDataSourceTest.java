@@ -0,0 +1,153 @@
+package com.edu.ulab.app.datasource;
+
+import com.edu.ulab.app.web.filter.HttpRequestFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Routing over a primary and two replicas, each a separate H2 database that knows its
+ * own name, wrapped in a {@link LazyConnectionDataSourceProxy} as in the application.
+ */
+class ReadWriteRoutingDataSourceTest {
+    private static final Duration STICKINESS = Duration.ofMinutes(1);
+
+    private static DataSource primary;
+    private static DataSource replica0;
+    private static DataSource replica1;
+
+    @BeforeAll
+    static void createDatabases() {
+        primary = database("primary");
+        replica0 = database("replica-0");
+        replica1 = database("replica-1");
+    }
+
+    @AfterEach
+    void clearRequestId() {
+        MDC.remove(HttpRequestFilter.REQUEST_ID);
+    }
+
+    @Test
+    void readOnlyTransactionUsesReplica() {
+        Routing routing = new Routing(List.of(replica0), STICKINESS);
+
+        assertThat(routing.read()).isEqualTo("replica-0");
+    }
+
+    @Test
+    void writeTransactionUsesPrimary() {
+        Routing routing = new Routing(List.of(replica0), STICKINESS);
+
+        assertThat(routing.write()).isEqualTo("primary");
+    }
+
+    @Test
+    void statementOutsideTransactionUsesPrimary() {
+        Routing routing = new Routing(List.of(replica0), STICKINESS);
+
+        assertThat(routing.jdbcTemplate.queryForObject("SELECT NAME FROM NODE", String.class)).isEqualTo("primary");
+    }
+
+    @Test
+    void readOnlyTransactionsTakeReplicasInTurn() {
+        Routing routing = new Routing(List.of(replica0, replica1), STICKINESS);
+
+        assertThat(List.of(routing.read(), routing.read(), routing.read()))
+                .containsExactly("replica-0", "replica-1", "replica-0");
+    }
+
+    @Test
+    void requestReadsPrimaryAfterItsWrite() {
+        Routing routing = new Routing(List.of(replica0), STICKINESS);
+        MDC.put(HttpRequestFilter.REQUEST_ID, "writer");
+
+        assertThat(routing.read()).isEqualTo("replica-0");
+        routing.write();
+        assertThat(routing.read()).isEqualTo("primary");
+        assertThat(routing.read()).isEqualTo("primary");
+    }
+
+    @Test
+    void otherRequestsKeepReadingReplicas() {
+        Routing routing = new Routing(List.of(replica0), STICKINESS);
+        MDC.put(HttpRequestFilter.REQUEST_ID, "writer");
+        routing.write();
+
+        MDC.put(HttpRequestFilter.REQUEST_ID, "reader");
+        assertThat(routing.read()).isEqualTo("replica-0");
+        MDC.remove(HttpRequestFilter.REQUEST_ID);
+        assertThat(routing.read()).isEqualTo("replica-0");
+    }
+
+    @Test
+    void requestReadsReplicaAgainWhenStickinessExpires() {
+        Routing routing = new Routing(List.of(replica0), Duration.ZERO);
+        MDC.put(HttpRequestFilter.REQUEST_ID, "writer");
+        routing.write();
+
+        assertThat(routing.read()).isEqualTo("replica-0");
+    }
+
+    @Test
+    void replicaIsRequired() {
+        assertThatThrownBy(() -> new ReadWriteRoutingDataSource(primary, List.of(), STICKINESS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static DataSource database(String name) {
+        DataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE NODE(NAME VARCHAR(20))");
+        jdbcTemplate.update("INSERT INTO NODE(NAME) VALUES (?)", name);
+        return dataSource;
+    }
+
+    /**
+     * Transactions over the proxied routing data source, returning the database they ran on.
+     */
+    private static final class Routing {
+        private final JdbcTemplate jdbcTemplate;
+        private final TransactionTemplate readTransaction;
+        private final TransactionTemplate writeTransaction;
+
+        Routing(List<DataSource> replicas, Duration stickiness) {
+            DataSource dataSource = new LazyConnectionDataSourceProxy(
+                    new ReadWriteRoutingDataSource(primary, replicas, stickiness));
+            DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+            this.readTransaction = new TransactionTemplate(transactionManager);
+            this.readTransaction.setReadOnly(true);
+            this.writeTransaction = new TransactionTemplate(transactionManager);
+        }
+
+        String read() {
+            return readTransaction.execute(status -> node());
+        }
+
+        String write() {
+            return writeTransaction.execute(status -> {
+                jdbcTemplate.update("UPDATE NODE SET NAME = NAME");
+                return node();
+            });
+        }
+
+        private String node() {
+            return jdbcTemplate.queryForObject("SELECT NAME FROM NODE", String.class);
+        }
+    }
+}
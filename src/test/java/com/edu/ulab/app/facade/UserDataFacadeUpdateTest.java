@@ -0,0 +1,235 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.cache.UserBookStats;
+import com.edu.ulab.app.cache.UserBooksCache;
+import com.edu.ulab.app.cache.UserExistenceFilter;
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.BookFanOutProperties;
+import com.edu.ulab.app.config.BookStatsProperties;
+import com.edu.ulab.app.config.DeleteProperties;
+import com.edu.ulab.app.config.LockingProperties;
+import com.edu.ulab.app.config.UserFilterProperties;
+import com.edu.ulab.app.config.WriteBehindProperties;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.mapper.BookMapperImpl;
+import com.edu.ulab.app.mapper.UserMapperImpl;
+import com.edu.ulab.app.service.impl.BookServiceImplTemplate;
+import com.edu.ulab.app.service.impl.UserServiceImplTemplate;
+import com.edu.ulab.app.web.UserController;
+import com.edu.ulab.app.web.handler.ControllerExceptionHandler;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.request.UserRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.edu.ulab.app.config.CacheConfig.USER_BOOKS_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Updates through the facade over the JdbcTemplate services on H2. A concurrent writer is
+ * simulated by bumping the user version on a separate connection right after the facade
+ * read the user, before its own versioned write.
+ */
+class UserDataFacadeUpdateTest {
+    private static final String URL = "jdbc:h2:mem:facade-update;DB_CLOSE_DELAY=-1";
+
+    private final DataSource dataSource = new DriverManagerDataSource(URL, "sa", "");
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    /**
+     * Another data source over the same database, so its statements don't join the
+     * transaction of the facade.
+     */
+    private final JdbcTemplate concurrentWriter = new JdbcTemplate(new DriverManagerDataSource(URL, "sa", ""));
+    private final LockingProperties lockingProperties = new LockingProperties();
+
+    private int concurrentWrites;
+    private UserDataFacade facade;
+
+    @BeforeEach
+    void createFacade() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        lockingProperties.setRetryBackoff(Duration.ZERO);
+        concurrentWrites = 0;
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BackendProperties backendProperties = new BackendProperties();
+        backendProperties.setRead(BackendProperties.Backend.JDBC);
+        backendProperties.setWrite(BackendProperties.Backend.JDBC);
+        UserFilterProperties filterProperties = new UserFilterProperties();
+        filterProperties.setEnabled(false);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        UserBooksCache userBooksCache = new UserBooksCache(new ConcurrentMapCacheManager(USER_BOOKS_CACHE));
+        UserExistenceFilter userExistenceFilter =
+                new UserExistenceFilter(filterProperties, backendProperties, dataSource, meterRegistry);
+        UserBookStats userBookStats =
+                new UserBookStats(new BookStatsProperties(), backendProperties, dataSource, meterRegistry);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        UserServiceImplTemplate userService = new UserServiceImplTemplate(jdbcTemplate, userBooksCache,
+                userExistenceFilter, userBookStats, new DeleteProperties()) {
+            @Override
+            public UserDto getUserById(Long id) {
+                UserDto userDto = super.getUserById(id);
+                if (concurrentWrites > 0) {
+                    concurrentWrites--;
+                    concurrentWriter.update("UPDATE PERSON SET VERSION = VERSION + 1 WHERE ID = ?", id);
+                }
+                return userDto;
+            }
+        };
+        BookServiceImplTemplate bookService = new BookServiceImplTemplate(jdbcTemplate, userBooksCache, userBookStats);
+        facade = new UserDataFacade(userService, bookService, new UserMapperImpl(), new BookMapperImpl(),
+                DistributionSummary.builder("books").register(meterRegistry),
+                lockingProperties,
+                transactionTemplate,
+                new ParallelBookWriter(bookService, new BookFanOutProperties(), transactionManager),
+                new WriteBehindWriter(new WriteBehindProperties(), backendProperties, jdbcTemplate,
+                        transactionTemplate, userExistenceFilter, userBookStats, new ObjectMapper(), meterRegistry),
+                userExistenceFilter, userBookStats, backendProperties);
+    }
+
+    @Test
+    void updateWritesOnlyTheDifference() {
+        long userId = createUser("kept", "changed", "removed");
+        long[] bookIds = bookIds(userId);
+
+        long[] updatedIds = facade.updateUserWithBooks(userId, request(
+                book(bookIds[0], "kept"), book(bookIds[1], "changed again"), book(null, "added"))).getBooksIdList();
+
+        assertThat(updatedIds).hasSize(3).startsWith(bookIds[0], bookIds[1]);
+        assertThat(books(userId)).containsExactly("kept:0", "changed again:1", "added:0");
+        assertThat(userVersion(userId)).isEqualTo(1L);
+    }
+
+    @Test
+    void unchangedUpdateWritesNothing() {
+        long userId = createUser("first", "second");
+        long[] bookIds = bookIds(userId);
+
+        facade.updateUserWithBooks(userId, request(book(bookIds[0], "first"), book(bookIds[1], "second")));
+
+        assertThat(books(userId)).containsExactly("first:0", "second:0");
+        assertThat(userVersion(userId)).isZero();
+    }
+
+    @Test
+    void requestWithoutBooksKeepsThem() {
+        long userId = createUser("first");
+        UserBookRequest request = request();
+        request.setBookRequests(null);
+        request.getUserRequest().setFullName("Renamed");
+
+        facade.updateUserWithBooks(userId, request);
+
+        assertThat(books(userId)).containsExactly("first:0");
+        assertThat(jdbcTemplate.queryForObject("SELECT FULL_NAME FROM PERSON WHERE ID = ?", String.class, userId))
+                .isEqualTo("Renamed");
+    }
+
+    @Test
+    void conflictingUpdateIsRetried() {
+        long userId = createUser("book");
+        long[] bookIds = bookIds(userId);
+        concurrentWrites = lockingProperties.getMaxAttempts() - 1;
+
+        facade.updateUserWithBooks(userId, request(book(bookIds[0], "retried")));
+
+        assertThat(concurrentWrites).isZero();
+        assertThat(books(userId)).containsExactly("retried:1");
+    }
+
+    @Test
+    void conflictIsReturnedAfterLastAttempt() {
+        long userId = createUser("book");
+        long[] bookIds = bookIds(userId);
+        concurrentWrites = lockingProperties.getMaxAttempts();
+
+        assertThatThrownBy(() -> facade.updateUserWithBooks(userId, request(book(bookIds[0], "lost"))))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(books(userId)).containsExactly("book:0");
+    }
+
+    @Test
+    void conflictIsMappedToConflictStatus() throws Exception {
+        long userId = createUser("book");
+        long[] bookIds = bookIds(userId);
+        concurrentWrites = lockingProperties.getMaxAttempts();
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new UserController(facade, null, null))
+                .setControllerAdvice(new ControllerExceptionHandler())
+                .build();
+
+        mockMvc.perform(put("/api/v1/user/update/{userId}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(new ObjectMapper().writeValueAsString(request(book(bookIds[0], "lost")))))
+                .andExpect(status().isConflict());
+    }
+
+    private long createUser(String... titles) {
+        BookRequest[] books = Arrays.stream(titles).map(title -> book(null, title)).toArray(BookRequest[]::new);
+        return facade.createUserWithBooks(request(books)).getUserId();
+    }
+
+    private long[] bookIds(long userId) {
+        return jdbcTemplate.queryForList("SELECT ID FROM BOOK WHERE USER_ID = ? ORDER BY ID", Long.class, userId)
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    /**
+     * Books of the user as {@code title:version} in id order.
+     */
+    private List<String> books(long userId) {
+        return jdbcTemplate.query("SELECT TITLE, VERSION FROM BOOK WHERE USER_ID = ? ORDER BY ID",
+                (rs, rowNum) -> rs.getString(1) + ":" + rs.getLong(2), userId);
+    }
+
+    private Long userVersion(long userId) {
+        return jdbcTemplate.queryForObject("SELECT VERSION FROM PERSON WHERE ID = ?", Long.class, userId);
+    }
+
+    private static UserBookRequest request(BookRequest... books) {
+        UserRequest userRequest = new UserRequest();
+        userRequest.setFullName("Reader");
+        userRequest.setTitle("reader");
+        userRequest.setAge(30);
+        UserBookRequest request = new UserBookRequest();
+        request.setUserRequest(userRequest);
+        request.setBookRequests(new ArrayList<>(List.of(books)));
+        return request;
+    }
+
+    private static BookRequest book(Long id, String title) {
+        BookRequest book = new BookRequest();
+        book.setId(id);
+        book.setTitle(title);
+        book.setAuthor("Author");
+        book.setPageCount(100);
+        return book;
+    }
+}
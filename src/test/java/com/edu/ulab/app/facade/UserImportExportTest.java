@@ -0,0 +1,217 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.cache.UserBookStats;
+import com.edu.ulab.app.cache.UserBooksCache;
+import com.edu.ulab.app.cache.UserExistenceFilter;
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.BookStatsProperties;
+import com.edu.ulab.app.config.DeleteProperties;
+import com.edu.ulab.app.config.ExportProperties;
+import com.edu.ulab.app.config.ImportProperties;
+import com.edu.ulab.app.config.UserFilterProperties;
+import com.edu.ulab.app.mapper.BookMapperImpl;
+import com.edu.ulab.app.mapper.UserMapperImpl;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.impl.BookServiceImplStorage;
+import com.edu.ulab.app.service.impl.BookServiceImplTemplate;
+import com.edu.ulab.app.service.impl.UserServiceImplStorage;
+import com.edu.ulab.app.service.impl.UserServiceImplTemplate;
+import com.edu.ulab.app.storage.Storage;
+import com.edu.ulab.app.storage.StorageProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.edu.ulab.app.config.CacheConfig.USER_BOOKS_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * NDJSON import and export through the facades over the JdbcTemplate services on H2,
+ * and the export over the in-memory storage.
+ */
+class UserImportExportTest {
+    private static final DataSource DATA_SOURCE =
+            new DriverManagerDataSource("jdbc:h2:mem:import-export;DB_CLOSE_DELAY=-1", "sa", "");
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(DATA_SOURCE);
+    private final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(DATA_SOURCE);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UserService userService;
+    private BookService bookService;
+
+    @BeforeEach
+    void createServices() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(DATA_SOURCE);
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UserFilterProperties filterProperties = new UserFilterProperties();
+        filterProperties.setEnabled(false);
+        BackendProperties backendProperties = backend(BackendProperties.Backend.JDBC);
+        UserBooksCache userBooksCache = userBooksCache();
+        UserBookStats userBookStats =
+                new UserBookStats(new BookStatsProperties(), backendProperties, DATA_SOURCE, meterRegistry);
+        userService = new UserServiceImplTemplate(jdbcTemplate, userBooksCache,
+                new UserExistenceFilter(filterProperties, backendProperties, DATA_SOURCE, meterRegistry),
+                userBookStats, new DeleteProperties());
+        bookService = new BookServiceImplTemplate(jdbcTemplate, userBooksCache, userBookStats);
+    }
+
+    @Test
+    void importWritesOneResultPerRecordInOrder() throws IOException {
+        List<JsonNode> results = importRecords(2,
+                record("Ann", "first", "second"),
+                "{\"bookRequests\":[]}",
+                record("Bob"),
+                record("Cid", "third"));
+
+        assertThat(results).hasSize(4);
+        assertThat(results.get(0).get("booksIdList")).hasSize(2);
+        assertThat(results.get(1).get("errorMessage").asText()).isEqualTo("User is missing");
+        assertThat(results.get(2).get("booksIdList")).isEmpty();
+        assertThat(results.get(3).get("booksIdList")).hasSize(1);
+        assertThat(jdbcTemplate.queryForList("SELECT FULL_NAME FROM PERSON ORDER BY ID", String.class))
+                .containsExactly("Ann", "Bob", "Cid");
+        assertThat(jdbcTemplate.queryForList("SELECT B.TITLE FROM BOOK B JOIN PERSON P ON P.ID = B.USER_ID " +
+                "WHERE P.FULL_NAME = 'Ann' ORDER BY B.ID", String.class)).containsExactly("first", "second");
+    }
+
+    @Test
+    void failedChunkIsRolledBackAlone() throws IOException {
+        List<JsonNode> results = importRecords(2,
+                record("Ann", "first"),
+                record("Bob", "x".repeat(300)),
+                record("Cid", "third"));
+
+        assertThat(results.get(0).has("errorMessage")).isTrue();
+        assertThat(results.get(1).has("errorMessage")).isTrue();
+        assertThat(results.get(2).get("userId").asLong()).isPositive();
+        assertThat(jdbcTemplate.queryForList("SELECT FULL_NAME FROM PERSON", String.class)).containsExactly("Cid");
+    }
+
+    @Test
+    void malformedRecordEndsImport() throws IOException {
+        List<JsonNode> results = importRecords(10, record("Ann"), "{\"userRequest\":}", record("Bob"));
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).get("userId").asLong()).isPositive();
+        assertThat(results.get(1).get("errorMessage").asText()).startsWith("Malformed record 2");
+        assertThat(jdbcTemplate.queryForList("SELECT FULL_NAME FROM PERSON", String.class)).containsExactly("Ann");
+    }
+
+    @Test
+    void exportMergesBooksIntoTheirUsers() throws IOException {
+        importRecords(10, record("Ann", "first", "second"), record("Bob"),
+                record("Cid", "third"), record("Dan", "fourth"));
+        jdbcTemplate.update("UPDATE PERSON SET DELETED = TRUE WHERE FULL_NAME = 'Cid'");
+
+        List<JsonNode> users = export(BackendProperties.Backend.JDBC);
+
+        assertThat(users).extracting(user -> user.get("fullName").asText()).containsExactly("Ann", "Bob", "Dan");
+        assertThat(titles(users.get(0))).containsExactly("first", "second");
+        assertThat(titles(users.get(1))).isEmpty();
+        assertThat(titles(users.get(2))).containsExactly("fourth");
+    }
+
+    @Test
+    void inMemoryExportMergesBooksIntoTheirUsers() throws IOException {
+        Storage storage = new Storage(new StorageProperties());
+        UserBooksCache userBooksCache = userBooksCache();
+        userService = new UserServiceImplStorage(storage, new UserMapperImpl(), userBooksCache);
+        bookService = new BookServiceImplStorage(storage, new BookMapperImpl(), userBooksCache);
+        ExportProperties exportProperties = new ExportProperties();
+        exportProperties.setFetchSize(2);
+        importRecords(10, record("Ann", "first"), record("Bob"), record("Cid", "second", "third"));
+        userService.deleteUserById(userService.getUsers(0, 1).get(0).getId());
+
+        List<JsonNode> users = export(BackendProperties.Backend.IN_MEMORY, exportProperties);
+
+        assertThat(users).extracting(user -> user.get("fullName").asText()).containsExactly("Bob", "Cid");
+        assertThat(titles(users.get(0))).isEmpty();
+        assertThat(titles(users.get(1))).containsExactly("second", "third");
+    }
+
+    private List<JsonNode> importRecords(int chunkSize, String... records) throws IOException {
+        ImportProperties importProperties = new ImportProperties();
+        importProperties.setChunkSize(chunkSize);
+        UserImportFacade facade = new UserImportFacade(userService, bookService, new UserMapperImpl(),
+                new BookMapperImpl(), objectMapper, new TransactionTemplate(transactionManager), importProperties,
+                backend(userService instanceof UserServiceImplStorage
+                        ? BackendProperties.Backend.IN_MEMORY
+                        : BackendProperties.Backend.JDBC));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        facade.importUsersWithBooks(
+                new ByteArrayInputStream(String.join("\n", records).getBytes(StandardCharsets.UTF_8)), out);
+        return lines(out);
+    }
+
+    private List<JsonNode> export(BackendProperties.Backend backend) throws IOException {
+        return export(backend, new ExportProperties());
+    }
+
+    private List<JsonNode> export(BackendProperties.Backend backend, ExportProperties exportProperties)
+            throws IOException {
+        UserExportFacade facade = new UserExportFacade(userService, bookService, new UserMapperImpl(),
+                new BookMapperImpl(), objectMapper, transactionManager, exportProperties, backend(backend));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        facade.exportUsersWithBooks(out);
+        return lines(out);
+    }
+
+    private List<JsonNode> lines(ByteArrayOutputStream out) throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(objectMapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> titles(JsonNode user) {
+        List<String> titles = new ArrayList<>();
+        user.get("books").forEach(book -> titles.add(book.get("title").asText()));
+        return titles;
+    }
+
+    private static String record(String fullName, String... titles) {
+        StringBuilder record = new StringBuilder("{\"userRequest\":{\"fullName\":\"" + fullName
+                + "\",\"title\":\"reader\",\"age\":30},\"bookRequests\":[");
+        for (int i = 0; i < titles.length; i++) {
+            record.append(i == 0 ? "" : ",")
+                    .append("{\"title\":\"").append(titles[i]).append("\",\"author\":\"Author\",\"pageCount\":100}");
+        }
+        return record.append("]}").toString();
+    }
+
+    private static UserBooksCache userBooksCache() {
+        return new UserBooksCache(new ConcurrentMapCacheManager(USER_BOOKS_CACHE));
+    }
+
+    private static BackendProperties backend(BackendProperties.Backend backend) {
+        BackendProperties backendProperties = new BackendProperties();
+        backendProperties.setRead(backend);
+        backendProperties.setWrite(backend);
+        return backendProperties;
+    }
+}
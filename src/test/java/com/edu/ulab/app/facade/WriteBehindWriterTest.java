@@ -0,0 +1,189 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.cache.UserBookStats;
+import com.edu.ulab.app.cache.UserExistenceFilter;
+import com.edu.ulab.app.config.BackendProperties;
+import com.edu.ulab.app.config.BookStatsProperties;
+import com.edu.ulab.app.config.UserFilterProperties;
+import com.edu.ulab.app.config.WriteBehindProperties;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.storage.SegmentLog;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Write-behind over H2 with the journal in a temporary directory. A crash is simulated by
+ * a journal holding accepted requests that were never marked written.
+ */
+class WriteBehindWriterTest {
+    private static final DataSource DATA_SOURCE =
+            new DriverManagerDataSource("jdbc:h2:mem:write-behind;DB_CLOSE_DELAY=-1", "sa", "");
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final byte ACCEPTED = 1;
+
+    @TempDir
+    Path journalDirectory;
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(DATA_SOURCE);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<WriteBehindWriter> writers = new ArrayList<>();
+
+    private UserBookStats userBookStats;
+
+    @BeforeEach
+    void createSchema() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(DATA_SOURCE);
+    }
+
+    @AfterEach
+    void closeWriters() throws InterruptedException {
+        for (WriteBehindWriter writer : writers) {
+            writer.close();
+        }
+    }
+
+    @Test
+    void acceptedRequestsAreWritten() throws InterruptedException {
+        WriteBehindWriter writer = start();
+
+        long userId = writer.createUserWithBooks(user("Reader"), List.of(book("first"), book("second"))).getUserId();
+        writer.close();
+
+        assertThat(titles(userId)).containsExactly("first", "second");
+        assertThat(userBookStats.getSummary(userId).getBookCount()).isEqualTo(2);
+    }
+
+    @Test
+    void unwrittenRequestsAreReplayedOnStartup() throws InterruptedException {
+        journal(request(1, "Reader", book(101, 1, "first"), book(102, 1, "second")),
+                request(2, "Writer", book(201, 2, "third")));
+
+        start().close();
+
+        assertThat(jdbcTemplate.queryForList("SELECT FULL_NAME FROM PERSON ORDER BY ID", String.class))
+                .containsExactly("Reader", "Writer");
+        assertThat(titles(1)).containsExactly("first", "second");
+        assertThat(titles(2)).containsExactly("third");
+    }
+
+    @Test
+    void replayedRowsAreInsertedOnce() throws InterruptedException {
+        jdbcTemplate.update("INSERT INTO PERSON(ID, FULL_NAME, TITLE, AGE) VALUES (1, 'Reader', 'reader', 30)");
+        jdbcTemplate.update("INSERT INTO BOOK(ID, TITLE, AUTHOR, PAGE_COUNT, USER_ID) " +
+                "VALUES (101, 'first', 'Author', 100, 1)");
+        journal(request(1, "Reader", book(101, 1, "first"), book(102, 1, "second")));
+
+        start().close();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM PERSON", Integer.class)).isEqualTo(1);
+        assertThat(titles(1)).containsExactly("first", "second");
+        assertThat(userBookStats.getSummary(1L).getBookCount()).isEqualTo(2);
+        assertThat(userBookStats.getSummary(1L).getPageCount()).isEqualTo(200);
+    }
+
+    @Test
+    void writtenRequestsAreNotReplayed() throws InterruptedException {
+        journal(request(1, "Reader", book(101, 1, "first")));
+        start().close();
+        jdbcTemplate.update("DELETE FROM PERSON");
+
+        start().close();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM PERSON", Integer.class)).isZero();
+    }
+
+    private WriteBehindWriter start() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WriteBehindProperties properties = new WriteBehindProperties();
+        properties.setEnabled(true);
+        properties.setJournalDirectory(journalDirectory.toString());
+        properties.setJournalSegmentSize(SEGMENT_SIZE);
+        properties.setMaxDelay(Duration.ZERO);
+        BackendProperties backendProperties = new BackendProperties();
+        backendProperties.setRead(BackendProperties.Backend.JDBC);
+        backendProperties.setWrite(BackendProperties.Backend.JDBC);
+        UserFilterProperties filterProperties = new UserFilterProperties();
+        filterProperties.setEnabled(false);
+        userBookStats = new UserBookStats(new BookStatsProperties(), backendProperties, DATA_SOURCE, meterRegistry);
+
+        WriteBehindWriter writer = new WriteBehindWriter(properties, backendProperties, jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(DATA_SOURCE)),
+                new UserExistenceFilter(filterProperties, backendProperties, DATA_SOURCE, meterRegistry),
+                userBookStats, objectMapper, meterRegistry);
+        writers.add(writer);
+        return writer;
+    }
+
+    /**
+     * Journal of requests accepted by a writer that stopped before writing them.
+     */
+    private void journal(WriteBehindWriter.AcceptedRequest... requests) {
+        SegmentLog journal = new SegmentLog(journalDirectory, SEGMENT_SIZE, false);
+        journal.recover((type, id, position) -> {
+        });
+        for (WriteBehindWriter.AcceptedRequest request : requests) {
+            try {
+                journal.append(ACCEPTED, request.user().getId(),
+                        ByteBuffer.wrap(objectMapper.writeValueAsBytes(request)));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        journal.close();
+    }
+
+    private List<String> titles(long userId) {
+        return jdbcTemplate.queryForList("SELECT TITLE FROM BOOK WHERE USER_ID = ? ORDER BY ID", String.class, userId);
+    }
+
+    private static WriteBehindWriter.AcceptedRequest request(long userId, String fullName, BookDto... books) {
+        UserDto userDto = user(fullName);
+        userDto.setId(userId);
+        return new WriteBehindWriter.AcceptedRequest(userDto, List.of(books));
+    }
+
+    private static UserDto user(String fullName) {
+        UserDto userDto = new UserDto();
+        userDto.setFullName(fullName);
+        userDto.setTitle("reader");
+        userDto.setAge(30);
+        return userDto;
+    }
+
+    private static BookDto book(String title) {
+        BookDto bookDto = new BookDto();
+        bookDto.setTitle(title);
+        bookDto.setAuthor("Author");
+        bookDto.setPageCount(100);
+        return bookDto;
+    }
+
+    private static BookDto book(long id, long userId, String title) {
+        BookDto bookDto = book(title);
+        bookDto.setId(id);
+        bookDto.setUserId(userId);
+        return bookDto;
+    }
+}
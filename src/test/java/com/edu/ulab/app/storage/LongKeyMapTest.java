@@ -0,0 +1,74 @@
+package com.edu.ulab.app.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongKeyMapTest {
+
+    @Test
+    void putReturnsPreviousValue() {
+        LongKeyMap<String> map = new LongKeyMap<>();
+
+        assertThat(map.put(1, "a")).isNull();
+        assertThat(map.put(1, "b")).isEqualTo("a");
+        assertThat(map.get(1)).isEqualTo("b");
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    void computeReturnsNewValueAndRemovesOnNull() {
+        LongKeyMap<String> map = new LongKeyMap<>();
+
+        assertThat(map.compute(7, current -> current == null ? "new" : current + "!")).isEqualTo("new");
+        assertThat(map.compute(7, current -> current == null ? "new" : current + "!")).isEqualTo("new!");
+        assertThat(map.compute(7, current -> null)).isNull();
+        assertThat(map.containsKey(7)).isFalse();
+        assertThat(map.size()).isZero();
+    }
+
+    @Test
+    void keepsKeysThroughResizeAndRemoval() {
+        LongKeyMap<Long> map = new LongKeyMap<>();
+        for (long key = -5_000; key < 5_000; key++) {
+            map.put(key, key);
+        }
+        for (long key = -5_000; key < 5_000; key += 3) {
+            map.remove(key);
+        }
+
+        for (long key = -5_000; key < 5_000; key++) {
+            assertThat(map.get(key)).isEqualTo((key + 5_000) % 3 == 0 ? null : key);
+        }
+        assertThat(map.size()).isEqualTo(6_666);
+    }
+
+    /**
+     * Removals shift probe chains back; random keys against a {@link HashMap} make
+     * long chains crossing the end of a table likely.
+     */
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        LongKeyMap<Integer> map = new LongKeyMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (long key = 0; key < 2_000; key++) {
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.edu.ulab.app.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentLogTest {
+    private static final int SEGMENT_SIZE = 4 * SegmentLog.SLOT_SIZE;
+    private static final SegmentLog.RecordVisitor NO_RECORDS = (type, id, position) -> {
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversRecordsInAppendOrder() {
+        SegmentLog log = open();
+        log.recover(NO_RECORDS);
+        long first = log.append((byte) 1, 10, payload("first"));
+        long second = log.append((byte) 2, 20, payload("second"));
+        log.close();
+
+        Recovered recovered = recover();
+
+        assertThat(recovered.records).containsExactly("1:10:first", "2:20:second");
+        assertThat(recovered.positions).containsExactly(first, second);
+    }
+
+    @Test
+    void recordsRollOverIntoNewSegments() {
+        SegmentLog log = open();
+        log.recover(NO_RECORDS);
+        for (int id = 0; id < 10; id++) {
+            log.append((byte) 1, id, payload("record-" + id));
+        }
+        log.close();
+
+        Recovered recovered = recover();
+
+        assertThat(recovered.records).hasSize(10).endsWith("1:9:record-9");
+        assertThat(recovered.positions.get(9) >>> 32).isEqualTo(2);
+    }
+
+    @Test
+    void tornRecordIsDroppedAndOverwritten() throws IOException {
+        SegmentLog log = open();
+        log.recover(NO_RECORDS);
+        log.append((byte) 1, 1, payload("kept"));
+        long torn = log.append((byte) 1, 2, payload("torn"));
+        log.close();
+        Path segment = directory.resolve("segment-000000.log");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(payload("x"), (int) torn + Integer.BYTES + Byte.BYTES + Long.BYTES);
+        }
+
+        SegmentLog reopened = open();
+        Recovered recovered = new Recovered(reopened);
+        reopened.recover(recovered);
+        long appended = reopened.append((byte) 1, 3, payload("next"));
+        reopened.close();
+
+        assertThat(recovered.records).containsExactly("1:1:kept");
+        assertThat(appended).isEqualTo(torn);
+        assertThat(recover().records).containsExactly("1:1:kept", "1:3:next");
+    }
+
+    @Test
+    void clearIfDropsAllRecordsWhenConditionHolds() {
+        SegmentLog log = open();
+        log.recover(NO_RECORDS);
+        for (int id = 0; id < 10; id++) {
+            log.append((byte) 1, id, payload("record-" + id));
+        }
+
+        assertThat(log.clearIf(() -> false)).isFalse();
+        assertThat(log.clearIf(() -> true)).isTrue();
+        log.append((byte) 1, 42, payload("after"));
+        log.close();
+
+        assertThat(recover().records).containsExactly("1:42:after");
+    }
+
+    private SegmentLog open() {
+        return new SegmentLog(directory, SEGMENT_SIZE, false);
+    }
+
+    private Recovered recover() {
+        SegmentLog log = open();
+        Recovered recovered = new Recovered(log);
+        log.recover(recovered);
+        log.close();
+        return recovered;
+    }
+
+    private static ByteBuffer payload(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Visited records as {@code type:id:payload}, with their positions.
+     */
+    private static final class Recovered implements SegmentLog.RecordVisitor {
+        private final SegmentLog log;
+        private final List<String> records = new ArrayList<>();
+        private final List<Long> positions = new ArrayList<>();
+
+        Recovered(SegmentLog log) {
+            this.log = log;
+        }
+
+        @Override
+        public void visit(byte type, long id, long position) {
+            String payload = StandardCharsets.UTF_8.decode(log.payload(position)).toString();
+            records.add(type + ":" + id + ":" + payload);
+            positions.add(position);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.edu.ulab.app.storage;
+
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.exception.NotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StorageTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void pagesSkipDeletedUsers() {
+        Storage storage = new Storage(new StorageProperties());
+        for (int i = 0; i < 10; i++) {
+            storage.createUser(user("user-" + i));
+        }
+        for (long id = 2; id <= 8; id++) {
+            storage.deleteUser(id);
+        }
+
+        assertThat(ids(storage.findUsers(0, 2))).containsExactly(1L, 9L);
+        assertThat(ids(storage.findUsers(9, 2))).containsExactly(10L);
+        assertThat(ids(storage.streamUsers(2).collect(Collectors.toList()))).containsExactly(1L, 9L, 10L);
+    }
+
+    @Test
+    void pageBoundsDoNotOverflow() {
+        Storage storage = new Storage(new StorageProperties());
+        storage.createUser(user("user"));
+
+        assertThat(storage.findUsers(Long.MAX_VALUE, Integer.MAX_VALUE)).isEmpty();
+        assertThat(ids(storage.findUsers(0, Integer.MAX_VALUE))).containsExactly(1L);
+    }
+
+    @Test
+    void bookMovesToAnotherUser() {
+        Storage storage = new Storage(new StorageProperties());
+        long from = storage.createUser(user("from")).getId();
+        long to = storage.createUser(user("to")).getId();
+        Book book = storage.createBook(book(from));
+
+        Book moved = book(to);
+        moved.setId(book.getId());
+        moved.setVersion(0L);
+        storage.updateBook(moved);
+
+        assertThat(storage.findBookIdsByUserId(from)).isEmpty();
+        assertThat(storage.findBookIdsByUserId(to)).containsExactly(book.getId());
+        assertThat(storage.findBook(book.getId())).get().extracting(Book::getVersion).isEqualTo(1L);
+    }
+
+    @Test
+    void bookStaysWhenNewUserIsMissing() {
+        Storage storage = new Storage(new StorageProperties());
+        long userId = storage.createUser(user("owner")).getId();
+        Book book = storage.createBook(book(userId));
+
+        Book moved = book(404L);
+        moved.setId(book.getId());
+
+        assertThatThrownBy(() -> storage.updateBook(moved)).isInstanceOf(NotFoundException.class);
+        assertThat(storage.findBookIdsByUserId(userId)).containsExactly(book.getId());
+        assertThat(storage.findBook(book.getId())).get().extracting(Book::getUserId).isEqualTo(userId);
+    }
+
+    @Test
+    void staleVersionFailsAndLeavesIndexUnchanged() {
+        Storage storage = new Storage(new StorageProperties());
+        long from = storage.createUser(user("from")).getId();
+        long to = storage.createUser(user("to")).getId();
+        Book book = storage.createBook(book(from));
+
+        Book moved = book(to);
+        moved.setId(book.getId());
+        moved.setVersion(5L);
+
+        assertThatThrownBy(() -> storage.updateBook(moved)).isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(storage.findBookIdsByUserId(from)).containsExactly(book.getId());
+        assertThat(storage.findBookIdsByUserId(to)).isEmpty();
+    }
+
+    @Test
+    void deletingUserDeletesBooks() {
+        Storage storage = new Storage(new StorageProperties());
+        long userId = storage.createUser(user("owner")).getId();
+        long[] bookIds = storage.createBooks(List.of(book(userId), book(userId)));
+
+        assertThat(storage.deleteUser(userId)).isTrue();
+        assertThat(storage.deleteUser(userId)).isFalse();
+        assertThat(storage.findBook(bookIds[0])).isEmpty();
+        assertThat(storage.findBook(bookIds[1])).isEmpty();
+        assertThat(storage.findBookIdsByUserIdIfPresent(userId)).isEmpty();
+        assertThatThrownBy(() -> storage.createBook(book(userId))).isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void durableStorageRecoversIndexesAndSequences() {
+        Storage storage = new Storage(durable());
+        long kept = storage.createUser(user("kept")).getId();
+        long deleted = storage.createUser(user("deleted")).getId();
+        long keptBook = storage.createBook(book(kept)).getId();
+        storage.createBook(book(deleted));
+        long deletedBook = storage.createBook(book(kept)).getId();
+        storage.deleteBook(deletedBook);
+        storage.deleteUser(deleted);
+        Person renamed = user("renamed");
+        renamed.setId(kept);
+        storage.updateUser(renamed);
+        storage.close();
+
+        Storage recovered = new Storage(durable());
+
+        assertThat(ids(recovered.findUsers(0, 10))).containsExactly(kept);
+        assertThat(recovered.findUser(kept)).get().extracting(Person::getFullName).isEqualTo("renamed");
+        assertThat(recovered.findBookIdsByUserId(kept)).containsExactly(keptBook);
+        assertThat(recovered.findBook(deletedBook)).isEmpty();
+        assertThat(recovered.createUser(user("next")).getId()).isGreaterThan(deleted);
+        assertThat(recovered.createBook(book(kept)).getId()).isGreaterThan(deletedBook);
+        recovered.close();
+    }
+
+    private StorageProperties durable() {
+        StorageProperties properties = new StorageProperties();
+        properties.setDurable(true);
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSize(64 * 1024);
+        return properties;
+    }
+
+    private static Person user(String fullName) {
+        Person user = new Person();
+        user.setFullName(fullName);
+        user.setTitle("reader");
+        user.setAge(30);
+        return user;
+    }
+
+    private static Book book(long userId) {
+        Book book = new Book();
+        book.setUserId(userId);
+        book.setTitle("title");
+        book.setAuthor("author");
+        book.setPageCount(100);
+        return book;
+    }
+
+    private static List<Long> ids(List<Person> users) {
+        return users.stream().map(Person::getId).collect(Collectors.toList());
+    }
+}